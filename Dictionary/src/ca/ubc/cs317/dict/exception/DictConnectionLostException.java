@@ -0,0 +1,18 @@
+package ca.ubc.cs317.dict.exception;
+
+/**
+ * Thrown when the connection to the server is lost in the middle of a request: the server closed it, or reading or
+ * writing failed. The connection is no longer usable, but the server may well answer the same request on a new one.
+ */
+public class DictConnectionLostException extends DictConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DictConnectionLostException(String message) {
+        super(message);
+    }
+
+    public DictConnectionLostException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,14 @@
+package ca.ubc.cs317.dict.exception;
+
+/**
+ * Thrown when a request is refused before being sent to the server, because too much background work is already
+ * waiting for a connection. Nothing is wrong with the connection; the request may be tried again later.
+ */
+public class DictRejectedException extends DictConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DictRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package ca.ubc.cs317.dict.exception;
+
+/**
+ * Thrown when the server answers with a transient negative reply (4xx), such as 420 (server temporarily unavailable)
+ * when a client has too many connections or sends commands too quickly. The request was not carried out, but may
+ * succeed later, once the client sends less.
+ */
+public class DictServerBusyException extends DictConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public DictServerBusyException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,19 @@
+package ca.ubc.cs317.dict.exception;
+
+/**
+ * Thrown when the server does not answer within the time allowed: the connect timeout, the read timeout, or the
+ * deadline of the whole request. The connection that timed out is no longer usable, since part of a reply may still
+ * be in transit.
+ */
+public class DictTimeoutException extends DictConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DictTimeoutException(String message) {
+        super(message);
+    }
+
+    public DictTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
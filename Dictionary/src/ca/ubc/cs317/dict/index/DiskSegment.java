@@ -0,0 +1,111 @@
+package ca.ubc.cs317.dict.index;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * An immutable segment of the inverted index stored in a file. Only the term dictionary is kept in memory; posting
+ * lists are read from disk when a query needs them.
+ *
+ * File layout: the encoded posting lists of every term, back to back, followed by the term dictionary (term, offset,
+ * length, for each term in sorted order) and a fixed-size footer (dictionary offset, term count, magic number).
+ */
+class DiskSegment implements Closeable {
+
+    private static final int MAGIC = 0x44494458; // "DIDX"
+    private static final int FOOTER_SIZE = 8 + 4 + 4;
+
+    private final Path path;
+    private final RandomAccessFile file;
+    private final TreeMap<String, long[]> dictionary = new TreeMap<>();
+
+    DiskSegment(Path path) throws IOException {
+        this.path = path;
+        this.file = new RandomAccessFile(path.toFile(), "r");
+        try {
+            long length = file.length();
+            if (length < FOOTER_SIZE)
+                throw new IOException("Truncated index segment: " + path);
+            file.seek(length - FOOTER_SIZE);
+            long dictionaryOffset = file.readLong();
+            int termCount = file.readInt();
+            if (file.readInt() != MAGIC)
+                throw new IOException("Not an index segment: " + path);
+            file.seek(dictionaryOffset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(file.getChannel())));
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                dictionary.put(term, new long[]{in.readLong(), in.readInt()});
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /** Size of the segment file, in bytes. */
+    long size() throws IOException {
+        return file.length();
+    }
+
+    SortedSet<String> terms() {
+        return Collections.unmodifiableSortedSet(dictionary.navigableKeySet());
+    }
+
+    synchronized PostingList postings(String term) throws IOException {
+        long[] entry = dictionary.get(term);
+        if (entry == null)
+            return PostingList.EMPTY;
+        byte[] data = new byte[(int) entry[1]];
+        file.seek(entry[0]);
+        file.readFully(data);
+        return PostingList.decode(data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /** Writes a new segment file. Terms must be added in increasing order. */
+    static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream dictionaryBuffer = new ByteArrayOutputStream();
+        private final DataOutputStream dictionaryOut = new DataOutputStream(dictionaryBuffer);
+        private long offset = 0;
+        private int termCount = 0;
+
+        Writer(Path path) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        }
+
+        void add(String term, PostingList postings) throws IOException {
+            if (postings.size() == 0)
+                return;
+            byte[] data = postings.encode();
+            out.write(data);
+            dictionaryOut.writeUTF(term);
+            dictionaryOut.writeLong(offset);
+            dictionaryOut.writeInt(data.length);
+            offset += data.length;
+            termCount++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            dictionaryOut.flush();
+            dictionaryBuffer.writeTo(out);
+            out.writeLong(offset);
+            out.writeInt(termCount);
+            out.writeInt(MAGIC);
+            out.close();
+        }
+    }
+}
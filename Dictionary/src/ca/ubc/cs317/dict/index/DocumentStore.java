@@ -0,0 +1,273 @@
+package ca.ubc.cs317.dict.index;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Append-only storage of the definitions in the index, addressed by document id (the order in which they were
+ * added). Only the offset and database of each document, and a hash of its key, are kept in memory; the text is read
+ * back from disk when a search result is displayed.
+ *
+ * A table of fixed-size records (offset, key hash, database id) is kept next to the documents, so opening the store
+ * reads the table instead of scanning every document. Documents written after the last record of the table (e.g.,
+ * by a store created before the table existed) are scanned and added to the table.
+ */
+class DocumentStore implements Closeable {
+
+    private static final String TABLE_SUFFIX = ".table";
+    private static final int RECORD_SIZE = 8 + 8 + 4;
+
+    private final RandomAccessFile file;
+    private final RandomAccessFile table;
+    private long[] offsets = new long[1024];
+    private int[] databaseIds = new int[1024];
+    private int size = 0;
+    private final List<String> databaseNames = new ArrayList<>();
+    private final Map<String, Integer> databaseIdsByName = new HashMap<>();
+    // Open addressing on the key hashes; a slot holds a document id plus one, or zero if it is empty
+    private long[] slotHashes = new long[2048];
+    private int[] slotDocuments = new int[2048];
+
+    DocumentStore(Path path) throws IOException {
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        this.table = new RandomAccessFile(path.resolveSibling(path.getFileName() + TABLE_SUFFIX).toFile(), "rw");
+        try {
+            long offset = readTable();
+            scan(offset);
+        } catch (IOException e) {
+            file.close();
+            table.close();
+            throw e;
+        }
+    }
+
+    /** Loads the records of the table whose documents were completely written. Only the last document, and the first
+     * document of each database, are read from the store.
+     *
+     * @return The offset of the first document not in the table.
+     */
+    private long readTable() throws IOException {
+        int records = (int) (table.length() / RECORD_SIZE);
+        long[] recordOffsets = new long[records];
+        long[] recordHashes = new long[records];
+        int[] recordDatabaseIds = new int[records];
+        table.seek(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(table.getFD())));
+        for (int record = 0; record < records; record++) {
+            recordOffsets[record] = in.readLong();
+            recordHashes[record] = in.readLong();
+            recordDatabaseIds[record] = in.readInt();
+        }
+        // Records are written after their document, but a crash may still have truncated the documents
+        long end = -1;
+        while (records > 0 && (end = endOf(recordOffsets[records - 1])) < 0)
+            records--;
+        for (int record = 0; record < records; record++) {
+            int databaseId = recordDatabaseIds[record];
+            if (databaseId > databaseNames.size())
+                throw new IOException("Corrupt document table: database " + databaseId + " used before it was added");
+            String database;
+            if (databaseId < databaseNames.size())
+                database = databaseNames.get(databaseId);
+            else {
+                file.seek(recordOffsets[record]);
+                database = file.readUTF();
+            }
+            register(recordOffsets[record], database, recordHashes[record]);
+        }
+        table.setLength((long) records * RECORD_SIZE);
+        return records == 0 ? 0 : end;
+    }
+
+    /** Returns the offset just past the document at an offset, or -1 if the document was not completely written. */
+    private long endOf(long offset) throws IOException {
+        try {
+            file.seek(offset);
+            file.readUTF(); // Database
+            file.readUTF(); // Description
+            file.readUTF(); // Word
+            long end = file.getFilePointer() + 4 + file.readInt();
+            return end <= file.length() ? end : -1;
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    /** Registers the documents from an offset to the end of the file, adding them to the table. */
+    private void scan(long offset) throws IOException {
+        file.seek(offset);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.getFD())));
+        long length = file.length();
+        try {
+            while (offset < length) {
+                String database = in.readUTF();
+                String description = in.readUTF();
+                String word = in.readUTF();
+                int textLength = in.readInt();
+                // Skipping may go past the end of the file, so the length is checked instead
+                long end = offset + utfLength(database) + utfLength(description) + utfLength(word) + 4 + textLength;
+                if (end > length)
+                    break;
+                in.skipBytes(textLength);
+                long hash = hash(key(database, word));
+                appendRecord(register(offset, database, hash), hash);
+                offset = end;
+            }
+        } catch (EOFException e) {
+            // A record was only partially written when the index was last closed; it will be overwritten
+        }
+        file.setLength(offset);
+        file.seek(offset);
+    }
+
+    /** Number of bytes used by DataOutput.writeUTF to write a string (modified UTF-8 with a length prefix). */
+    private static int utfLength(String s) {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : (c <= 0x07FF ? 2 : 3);
+        }
+        return length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Checks whether a definition of the same word from the same database was stored. Documents whose key has the
+     * same hash are read back to compare their keys, so a collision costs a disk read but never a wrong answer.
+     */
+    boolean contains(Definition definition) throws IOException {
+        String key = key(definition.getDatabase().getName(), definition.getWord());
+        long hash = hash(key);
+        for (int slot = slot(hash); slotDocuments[slot] != 0; slot = (slot + 1) & (slotHashes.length - 1))
+            if (slotHashes[slot] == hash && key.equals(keyOf(slotDocuments[slot] - 1)))
+                return true;
+        return false;
+    }
+
+    /** Appends a definition to the store.
+     *
+     * @return The id of the new document.
+     */
+    int add(Definition definition) throws IOException {
+        Database database = definition.getDatabase();
+        long offset = file.length();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeUTF(database.getName());
+        out.writeUTF(database.getDescription() == null ? "" : database.getDescription());
+        out.writeUTF(definition.getWord());
+        byte[] text = (definition.getDefinition() == null ? "" : definition.getDefinition())
+                .getBytes(StandardCharsets.UTF_8);
+        out.writeInt(text.length);
+        out.write(text);
+        file.seek(offset);
+        file.write(buffer.toByteArray());
+        // The table is written after the document, so a record never refers to a document that is not complete
+        long hash = hash(key(database.getName(), definition.getWord()));
+        int document = register(offset, database.getName(), hash);
+        appendRecord(document, hash);
+        return document;
+    }
+
+    Definition get(int document) throws IOException {
+        file.seek(offsets[document]);
+        String database = file.readUTF();
+        String description = file.readUTF();
+        String word = file.readUTF();
+        byte[] text = new byte[file.readInt()];
+        file.readFully(text);
+        Definition definition = new Definition(word, new Database(database, description));
+        definition.setDefinition(new String(text, StandardCharsets.UTF_8));
+        return definition;
+    }
+
+    String databaseName(int document) {
+        return databaseNames.get(databaseIds[document]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+        table.close();
+    }
+
+    private String keyOf(int document) throws IOException {
+        file.seek(offsets[document]);
+        String database = file.readUTF();
+        file.readUTF(); // Description
+        return key(database, file.readUTF());
+    }
+
+    private void appendRecord(int document, long hash) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(RECORD_SIZE);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeLong(offsets[document]);
+        out.writeLong(hash);
+        out.writeInt(databaseIds[document]);
+        table.seek((long) document * RECORD_SIZE);
+        table.write(buffer.toByteArray());
+    }
+
+    private int register(long offset, String database, long hash) {
+        Integer databaseId = databaseIdsByName.get(database);
+        if (databaseId == null) {
+            databaseId = databaseNames.size();
+            databaseNames.add(database);
+            databaseIdsByName.put(database, databaseId);
+        }
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            databaseIds = Arrays.copyOf(databaseIds, size * 2);
+        }
+        offsets[size] = offset;
+        databaseIds[size] = databaseId;
+        // Keep the hash table at most half full
+        if ((size + 1) * 2 > slotHashes.length)
+            resizeSlots(slotHashes.length * 2);
+        insertSlot(hash, size);
+        return size++;
+    }
+
+    private void resizeSlots(int capacity) {
+        long[] hashes = slotHashes;
+        int[] documents = slotDocuments;
+        slotHashes = new long[capacity];
+        slotDocuments = new int[capacity];
+        for (int slot = 0; slot < hashes.length; slot++)
+            if (documents[slot] != 0)
+                insertSlot(hashes[slot], documents[slot] - 1);
+    }
+
+    private void insertSlot(long hash, int document) {
+        int slot = slot(hash);
+        while (slotDocuments[slot] != 0)
+            slot = (slot + 1) & (slotHashes.length - 1);
+        slotHashes[slot] = hash;
+        slotDocuments[slot] = document + 1;
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (slotHashes.length - 1);
+    }
+
+    private static String key(String database, String word) {
+        return database + "\0" + word.toLowerCase(Locale.ROOT);
+    }
+
+    /** 64-bit FNV-1a hash of a key. */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
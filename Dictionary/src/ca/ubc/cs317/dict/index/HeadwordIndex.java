@@ -0,0 +1,399 @@
+package ca.ubc.cs317.dict.index;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A trigram index over the headwords of a database, used to answer substring and regular expression MATCH queries
+ * locally. Every headword is listed under each three-character sequence it contains. A query is answered by
+ * intersecting the lists of the trigrams it requires, which leaves a small set of candidates, and then checking each
+ * candidate against the query itself, so the result is exactly the set of headwords a full scan would find. The
+ * trigrams include a start and an end marker around each headword, so anchored expressions such as ^qu or ment$ are
+ * narrowed down as well.
+ *
+ * Matching ignores case, like the substring and re strategies of dictd.
+ */
+public class HeadwordIndex {
+
+    private static final int[] ALL = null;
+    private static final char START = '\u0001';
+    private static final char END = '\u0002';
+    private static final Map<String, String> POSIX_CLASSES = new HashMap<>();
+
+    static {
+        for (String name : new String[]{"alpha", "digit", "alnum", "upper", "lower", "punct", "graph", "print",
+                "blank", "cntrl", "space"})
+            POSIX_CLASSES.put(name, "\\p{" + Character.toUpperCase(name.charAt(0)) + name.substring(1) + "}");
+        POSIX_CLASSES.put("xdigit", "\\p{XDigit}");
+    }
+
+    private final String[] headwords;
+    private final String[] keys;
+    private final Map<Long, int[]> trigrams = new HashMap<>();
+
+    /**
+     * @param headwords The headwords of the database. Duplicates are ignored; results keep the order given here.
+     */
+    public HeadwordIndex(Collection<String> headwords) {
+        Set<String> distinct = new LinkedHashSet<>(headwords);
+        this.headwords = distinct.toArray(new String[distinct.size()]);
+        this.keys = new String[this.headwords.length];
+        Map<Long, IntList> lists = new HashMap<>();
+        for (int id = 0; id < this.headwords.length; id++) {
+            keys[id] = this.headwords[id].toLowerCase(Locale.ROOT);
+            String padded = START + keys[id] + END;
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                long trigram = trigram(padded, i);
+                IntList list = lists.get(trigram);
+                if (list == null)
+                    lists.put(trigram, list = new IntList());
+                list.addOnce(id);
+            }
+        }
+        for (Map.Entry<Long, IntList> entry : lists.entrySet())
+            trigrams.put(entry.getKey(), entry.getValue().toArray());
+    }
+
+    public int size() {
+        return headwords.length;
+    }
+
+    /** Finds the headwords that contain a word, ignoring case. */
+    public Set<String> substring(String word) {
+        String key = word.toLowerCase(Locale.ROOT);
+        Set<String> result = new LinkedHashSet<>();
+        int[] candidates = candidates(Collections.singletonList(key));
+        for (int id : iterate(candidates)) {
+            if (keys[id].contains(key))
+                result.add(headwords[id]);
+        }
+        return result;
+    }
+
+    /** Finds the headwords that contain a match of a POSIX extended regular expression, the flavour of dictd's re
+     * strategy, ignoring case.
+     *
+     * @throws IllegalArgumentException If the expression is not valid, or uses syntax that can't be translated
+     * faithfully to a Java pattern (see toJavaRegex); the server should be asked instead.
+     */
+    public Set<String> regex(String expression) {
+        String javaExpression = toJavaRegex(expression);
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(javaExpression, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regular expression: " + expression, e);
+        }
+        Set<String> result = new LinkedHashSet<>();
+        int[] candidates = candidates(requiredLiterals(javaExpression));
+        for (int id : iterate(candidates)) {
+            if (pattern.matcher(headwords[id]).find())
+                result.add(headwords[id]);
+        }
+        return result;
+    }
+
+    /** Intersects the lists of every trigram of the given literals.
+     *
+     * @return The ids of the headwords containing all those trigrams, or ALL if the literals have no trigram.
+     */
+    private int[] candidates(List<String> literals) {
+        List<int[]> lists = new ArrayList<>();
+        for (String literal : literals) {
+            for (int i = 0; i + 3 <= literal.length(); i++) {
+                int[] list = trigrams.get(trigram(literal, i));
+                if (list == null)
+                    return new int[0];
+                lists.add(list);
+            }
+        }
+        if (lists.isEmpty())
+            return ALL;
+        // Start with the shortest list, so every intersection is at most that long
+        Collections.sort(lists, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(a.length, b.length);
+            }
+        });
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++)
+            result = intersect(result, lists.get(i));
+        return result;
+    }
+
+    private int[] iterate(int[] candidates) {
+        if (candidates != ALL)
+            return candidates;
+        int[] all = new int[headwords.length];
+        for (int i = 0; i < all.length; i++)
+            all[i] = i;
+        return all;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j])
+                i++;
+            else if (a[i] > b[j])
+                j++;
+            else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static long trigram(String key, int start) {
+        return ((long) key.charAt(start) << 32) | ((long) key.charAt(start + 1) << 16) | key.charAt(start + 2);
+    }
+
+    /** Translates a POSIX extended regular expression into a Java pattern that matches the same strings. Bracket
+     * expressions are rewritten, since a backslash, '[' or '&' inside them is an ordinary character in POSIX but not in
+     * Java, and character classes such as [:alpha:] become \p{Alpha}. Anything the two flavours could read
+     * differently is refused rather than guessed at: collating elements and equivalence classes ([. .] and [= =]),
+     * escaped letters and digits (Java classes, GNU extensions or back references), groups starting with (? and
+     * quantifiers following another quantifier (Java's lazy and possessive forms).
+     *
+     * @throws IllegalArgumentException If the expression can't be translated.
+     */
+    static String toJavaRegex(String expression) {
+        StringBuilder java = new StringBuilder();
+        boolean afterQuantifier = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            boolean quantifier = false;
+            switch (c) {
+                case '[':
+                    i = translateBracket(expression, i, java);
+                    break;
+                case '\\':
+                    if (i + 1 >= expression.length() || Character.isLetterOrDigit(expression.charAt(i + 1)))
+                        throw new IllegalArgumentException("Escape not supported locally: " + expression);
+                    java.append(c).append(expression.charAt(++i));
+                    break;
+                case '(':
+                    if (i + 1 < expression.length() && expression.charAt(i + 1) == '?')
+                        throw new IllegalArgumentException("Not a POSIX regular expression: " + expression);
+                    java.append(c);
+                    break;
+                case '{':
+                    int close = expression.indexOf('}', i);
+                    if (close < 0 || !expression.substring(i + 1, close).matches("[0-9]+(,[0-9]*)?"))
+                        throw new IllegalArgumentException("Interval not supported locally: " + expression);
+                    java.append(expression, i, close + 1);
+                    i = close;
+                    quantifier = true;
+                    break;
+                case '*':
+                case '+':
+                case '?':
+                    java.append(c);
+                    quantifier = true;
+                    break;
+                default:
+                    java.append(c);
+            }
+            if (quantifier && afterQuantifier)
+                throw new IllegalArgumentException("Repeated quantifiers not supported locally: " + expression);
+            afterQuantifier = quantifier;
+        }
+        return java.toString();
+    }
+
+    /** Appends the Java equivalent of the POSIX bracket expression starting at start.
+     *
+     * @return The position of the bracket that closes the expression.
+     */
+    private static int translateBracket(String expression, int start, StringBuilder java) {
+        int i = start + 1;
+        java.append('[');
+        if (i < expression.length() && expression.charAt(i) == '^') {
+            java.append('^');
+            i++;
+        }
+        // A closing bracket right at the start is an ordinary character
+        if (i < expression.length() && expression.charAt(i) == ']') {
+            java.append("\\]");
+            i++;
+        }
+        for (; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == ']') {
+                java.append(']');
+                return i;
+            }
+            if (c == '[' && i + 1 < expression.length() && ":.=".indexOf(expression.charAt(i + 1)) >= 0) {
+                char kind = expression.charAt(i + 1);
+                int end = expression.indexOf(kind + "]", i + 2);
+                String name = end < 0 ? null : POSIX_CLASSES.get(expression.substring(i + 2, end));
+                if (kind != ':' || name == null)
+                    throw new IllegalArgumentException("Bracket expression not supported locally: " + expression);
+                java.append(name);
+                i = end + 1;
+            } else if ("\\[&^".indexOf(c) >= 0) {
+                java.append('\\').append(c);
+            } else {
+                java.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated bracket expression: " + expression);
+    }
+
+    /** Extracts literal strings that every match of a regular expression must contain. The extraction is
+     * conservative: it may miss required literals (which only leaves more candidates to check), but never returns a
+     * string that a match could lack. Groups and character classes are skipped, characters followed by a quantifier
+     * that allows zero repetitions are dropped, and an alternation outside a group (or any inline flag) means nothing
+     * is required.
+     *
+     * @return The required literals, in lower case.
+     */
+    static List<String> requiredLiterals(String expression) {
+        List<String> literals = new ArrayList<>();
+        if (expression.contains("(?"))
+            return literals; // Inline flags, such as comments mode, change what the other characters mean
+        StringBuilder run = new StringBuilder();
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            char literal;
+            switch (c) {
+                case '|':
+                    return new ArrayList<>();
+                case '[':
+                    i = skipClass(expression, i);
+                    endRun(literals, run);
+                    continue;
+                case '(':
+                    i = skipGroup(expression, i);
+                    endRun(literals, run);
+                    continue;
+                case '{':
+                    // A repetition count, which doesn't contain literals either
+                    i = Math.max(i, expression.indexOf('}', i));
+                    endRun(literals, run);
+                    continue;
+                case '^':
+                    // Only the first character is an anchor outside multiline mode (flags have been ruled out)
+                    endRun(literals, run);
+                    if (i == 0)
+                        run.append(START);
+                    continue;
+                case '$':
+                    if (i == expression.length() - 1)
+                        run.append(END);
+                    endRun(literals, run);
+                    continue;
+                case '.':
+                case '*':
+                case '+':
+                case '?':
+                case '}':
+                case ')':
+                case ']':
+                    endRun(literals, run);
+                    continue;
+                case '\\':
+                    if (i + 1 >= expression.length())
+                        return literals;
+                    literal = expression.charAt(++i);
+                    if (literal == 'Q') {
+                        // Quoted sequences are rare enough to stop looking for literals
+                        endRun(literals, run);
+                        return literals;
+                    }
+                    if ("dDwWsSbB".indexOf(literal) >= 0) {
+                        // A class (\d, \w...) or an anchor (\b), which matches no particular letter
+                        endRun(literals, run);
+                        continue;
+                    }
+                    if (Character.isLetterOrDigit(literal)) {
+                        // Any other escape (\x61, \u0061, \0141, \t, \p{L}, a back reference...) may stand for a
+                        // letter, which would be missing from the run, so there are no more literals to be found
+                        endRun(literals, run);
+                        return literals;
+                    }
+                    break;
+                default:
+                    literal = c;
+            }
+            char next = i + 1 < expression.length() ? expression.charAt(i + 1) : 0;
+            if (next == '*' || next == '?' || next == '{') {
+                // The character may not appear at all
+                endRun(literals, run);
+            } else if (next == '+') {
+                run.append(literal);
+                endRun(literals, run);
+            } else {
+                run.append(literal);
+            }
+        }
+        endRun(literals, run);
+        return literals;
+    }
+
+    private static void endRun(List<String> literals, StringBuilder run) {
+        if (run.length() > 0)
+            literals.add(run.toString().toLowerCase(Locale.ROOT));
+        run.setLength(0);
+    }
+
+    /** Returns the position of the bracket that closes the character class starting at start. */
+    private static int skipClass(String expression, int start) {
+        int i = start + 1;
+        if (i < expression.length() && expression.charAt(i) == '^')
+            i++;
+        if (i < expression.length() && expression.charAt(i) == ']')
+            i++;
+        int depth = 1;
+        for (; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (c == '[')
+                depth++;
+            else if (c == ']' && --depth == 0)
+                return i;
+        }
+        return expression.length();
+    }
+
+    /** Returns the position of the parenthesis that closes the group starting at start. */
+    private static int skipGroup(String expression, int start) {
+        int depth = 0;
+        for (int i = start; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (c == '[')
+                i = skipClass(expression, i);
+            else if (c == '(')
+                depth++;
+            else if (c == ')' && --depth == 0)
+                return i;
+        }
+        return expression.length();
+    }
+
+    /** A growable list of increasing ids. */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value)
+                return;
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package ca.ubc.cs317.dict.index;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A parsed reverse lookup query. The syntax is:
+ * <pre>
+ *     query  := and ( "OR" and )*
+ *     and    := clause ( ["AND"] clause )*
+ *     clause := word | "quoted phrase" | ( query )
+ * </pre>
+ * Adjacent clauses are combined with AND, which binds tighter than OR. Words are normalized with TextAnalyzer; a word
+ * that analyzes to several terms (e.g., "e-mail") is treated as a phrase.
+ */
+public abstract class IndexQuery {
+
+    /** Finds the matching documents, with their scores.
+     *
+     * @return A map from document id to score, for every matching document.
+     */
+    abstract Map<Integer, Double> evaluate(InvertedIndex index) throws IOException;
+
+    public static IndexQuery parse(String query) {
+        List<String> tokens = tokenize(query);
+        int[] position = {0};
+        IndexQuery parsed = parseOr(tokens, position);
+        if (parsed == null || position[0] < tokens.size())
+            throw new IllegalArgumentException("Invalid query: " + query);
+        return parsed;
+    }
+
+    private static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0)
+                    end = query.length();
+                tokens.add(query.substring(i, end)); // keeps the opening quote as a marker
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < query.length() && !Character.isWhitespace(query.charAt(i)) &&
+                        "()\"".indexOf(query.charAt(i)) < 0)
+                    i++;
+                tokens.add(query.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static IndexQuery parseOr(List<String> tokens, int[] position) {
+        List<IndexQuery> clauses = new ArrayList<>();
+        clauses.add(parseAnd(tokens, position));
+        while (position[0] < tokens.size() && tokens.get(position[0]).equals("OR")) {
+            position[0]++;
+            clauses.add(parseAnd(tokens, position));
+        }
+        clauses.removeAll(Collections.singleton(null));
+        if (clauses.isEmpty())
+            return null;
+        return clauses.size() == 1 ? clauses.get(0) : new Or(clauses);
+    }
+
+    private static IndexQuery parseAnd(List<String> tokens, int[] position) {
+        List<IndexQuery> clauses = new ArrayList<>();
+        while (position[0] < tokens.size()) {
+            String token = tokens.get(position[0]);
+            if (token.equals("OR") || token.equals(")"))
+                break;
+            position[0]++;
+            if (token.equals("AND"))
+                continue;
+            IndexQuery clause;
+            if (token.equals("(")) {
+                clause = parseOr(tokens, position);
+                if (position[0] >= tokens.size() || !tokens.get(position[0]).equals(")"))
+                    throw new IllegalArgumentException("Missing closing parenthesis");
+                position[0]++;
+            } else {
+                clause = terms(TextAnalyzer.analyze(token.startsWith("\"") ? token.substring(1) : token));
+            }
+            if (clause != null)
+                clauses.add(clause);
+        }
+        if (clauses.isEmpty())
+            return null;
+        return clauses.size() == 1 ? clauses.get(0) : new And(clauses);
+    }
+
+    private static IndexQuery terms(List<String> terms) {
+        if (terms.isEmpty())
+            return null;
+        return terms.size() == 1 ? new Term(terms.get(0)) : new Phrase(terms);
+    }
+
+    private static double idf(InvertedIndex index, PostingList postings) {
+        return Math.log(1 + (double) index.documentCount() / Math.max(1, postings.size()));
+    }
+
+    static class Term extends IndexQuery {
+        private final String term;
+
+        Term(String term) {
+            this.term = term;
+        }
+
+        @Override
+        Map<Integer, Double> evaluate(InvertedIndex index) throws IOException {
+            PostingList postings = index.postings(term);
+            double idf = idf(index, postings);
+            Map<Integer, Double> scores = new HashMap<>();
+            for (int i = 0; i < postings.size(); i++)
+                scores.put(postings.document(i), (1 + Math.log(postings.positions(i).length)) * idf);
+            return scores;
+        }
+    }
+
+    static class Phrase extends IndexQuery {
+        private final List<String> terms;
+
+        Phrase(List<String> terms) {
+            this.terms = terms;
+        }
+
+        @Override
+        Map<Integer, Double> evaluate(InvertedIndex index) throws IOException {
+            List<PostingList> lists = new ArrayList<>();
+            double idf = 0;
+            for (String term : terms) {
+                PostingList postings = index.postings(term);
+                if (postings.size() == 0)
+                    return Collections.emptyMap();
+                lists.add(postings);
+                idf += idf(index, postings);
+            }
+            Map<Integer, Double> scores = new HashMap<>();
+            int[] cursors = new int[lists.size()];
+            PostingList first = lists.get(0);
+            documents:
+            for (int i = 0; i < first.size(); i++) {
+                int document = first.document(i);
+                // Advance every other list to the same document; posting lists are sorted by document id
+                for (int t = 1; t < lists.size(); t++) {
+                    PostingList list = lists.get(t);
+                    while (cursors[t] < list.size() && list.document(cursors[t]) < document)
+                        cursors[t]++;
+                    if (cursors[t] == list.size())
+                        break documents;
+                    if (list.document(cursors[t]) != document)
+                        continue documents;
+                }
+                int occurrences = 0;
+                for (int start : first.positions(i)) {
+                    boolean found = true;
+                    for (int t = 1; t < lists.size() && found; t++)
+                        found = Arrays.binarySearch(lists.get(t).positions(cursors[t]), start + t) >= 0;
+                    if (found)
+                        occurrences++;
+                }
+                if (occurrences > 0)
+                    scores.put(document, (1 + Math.log(occurrences)) * idf);
+            }
+            return scores;
+        }
+    }
+
+    static class And extends IndexQuery {
+        private final List<IndexQuery> clauses;
+
+        And(List<IndexQuery> clauses) {
+            this.clauses = clauses;
+        }
+
+        @Override
+        Map<Integer, Double> evaluate(InvertedIndex index) throws IOException {
+            Map<Integer, Double> scores = null;
+            for (IndexQuery clause : clauses) {
+                Map<Integer, Double> clauseScores = clause.evaluate(index);
+                if (scores == null) {
+                    scores = new HashMap<>(clauseScores);
+                    continue;
+                }
+                for (Iterator<Map.Entry<Integer, Double>> it = scores.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<Integer, Double> entry = it.next();
+                    Double score = clauseScores.get(entry.getKey());
+                    if (score == null)
+                        it.remove();
+                    else
+                        entry.setValue(entry.getValue() + score);
+                }
+                if (scores.isEmpty())
+                    break;
+            }
+            return scores;
+        }
+    }
+
+    static class Or extends IndexQuery {
+        private final List<IndexQuery> clauses;
+
+        Or(List<IndexQuery> clauses) {
+            this.clauses = clauses;
+        }
+
+        @Override
+        Map<Integer, Double> evaluate(InvertedIndex index) throws IOException {
+            Map<Integer, Double> scores = new HashMap<>();
+            for (IndexQuery clause : clauses) {
+                for (Map.Entry<Integer, Double> entry : clause.evaluate(index).entrySet()) {
+                    Double score = scores.get(entry.getKey());
+                    scores.put(entry.getKey(), score == null ? entry.getValue() : score + entry.getValue());
+                }
+            }
+            return scores;
+        }
+    }
+}
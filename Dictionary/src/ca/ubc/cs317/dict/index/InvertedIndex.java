@@ -0,0 +1,262 @@
+package ca.ubc.cs317.dict.index;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A full-text index over definition bodies, allowing reverse lookups ("which words are defined using X?") that the
+ * DICT protocol can't answer. Definitions are added incrementally as they are retrieved; each (database, word) pair
+ * is indexed only once.
+ *
+ * New definitions are indexed in memory and periodically flushed to an immutable segment file. The newest segments
+ * are merged as soon as they are about as large as the one before them (within MERGE_FACTOR), so segment sizes grow
+ * geometrically: searches only need to read a few posting lists per term, and each document is rewritten a
+ * logarithmic number of times rather than on every merge. A manifest
+ * file lists the live segments and how many documents they cover; documents added after the last flush are
+ * re-indexed from the document store when the index is opened again.
+ */
+public class InvertedIndex implements Closeable {
+
+    public static final int DEFAULT_FLUSH_THRESHOLD = 1000;
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+    public static final int MERGE_FACTOR = 2;
+
+    private static final String MANIFEST = "segments";
+    private static final String DOCUMENTS = "documents.dat";
+
+    private final Path directory;
+    private final DocumentStore documents;
+    private final List<DiskSegment> segments = new ArrayList<>();
+    private TreeMap<String, PostingList.Builder> memorySegment = new TreeMap<>();
+    private int memoryDocuments = 0;
+    private int indexedDocuments = 0;
+    private int nextSegmentNumber = 0;
+    private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+    private int maxSegments = DEFAULT_MAX_SEGMENTS;
+
+    private InvertedIndex(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        readManifest();
+        this.documents = new DocumentStore(directory.resolve(DOCUMENTS));
+        for (int document = indexedDocuments; document < documents.size(); document++)
+            indexInMemory(document, documents.get(document));
+    }
+
+    /** Opens the index stored in a directory, creating an empty one if the directory has no index yet.
+     *
+     * @throws IOException If the index exists but can't be read.
+     */
+    public static InvertedIndex open(Path directory) throws IOException {
+        return new InvertedIndex(directory);
+    }
+
+    /** Sets how many documents are indexed in memory before they are written to a new segment. */
+    public synchronized void setFlushThreshold(int flushThreshold) {
+        this.flushThreshold = flushThreshold;
+    }
+
+    /** Sets how many segments may exist before the newest are merged, even if they differ in size. */
+    public synchronized void setMaxSegments(int maxSegments) {
+        this.maxSegments = maxSegments;
+    }
+
+    /** Adds a definition to the index, unless the same word from the same database was already indexed.
+     *
+     * @return true if the definition was added.
+     * @throws IOException If the definition or a new segment could not be written.
+     */
+    public synchronized boolean add(Definition definition) throws IOException {
+        if (definition.getDatabase() == null || documents.contains(definition))
+            return false;
+        indexInMemory(documents.add(definition), definition);
+        if (memoryDocuments >= flushThreshold)
+            flush();
+        return true;
+    }
+
+    public synchronized void addAll(Collection<Definition> definitions) throws IOException {
+        for (Definition definition : definitions)
+            add(definition);
+    }
+
+    public synchronized int documentCount() {
+        return documents.size();
+    }
+
+    /** Finds the definitions matching a query, best matches first.
+     *
+     * @param query         Query in the syntax described in IndexQuery.
+     * @param databaseNames Names of the databases whose definitions may be returned, or null for all databases.
+     * @param limit         Maximum number of results.
+     * @return The matching definitions, ordered by decreasing score.
+     * @throws IllegalArgumentException If the query is not valid.
+     * @throws IOException If the index can't be read.
+     */
+    public synchronized List<SearchHit> search(String query, Collection<String> databaseNames, int limit)
+            throws IOException {
+        List<SearchHit> hits = new ArrayList<>();
+        for (Map.Entry<Integer, Double> entry : IndexQuery.parse(query).evaluate(this).entrySet()) {
+            String databaseName = documents.databaseName(entry.getKey());
+            if (databaseNames == null || databaseNames.contains(databaseName))
+                hits.add(new SearchHit(entry.getKey(), databaseName, entry.getValue()));
+        }
+        Collections.sort(hits, new Comparator<SearchHit>() {
+            @Override
+            public int compare(SearchHit a, SearchHit b) {
+                int byScore = Double.compare(b.getScore(), a.getScore());
+                return byScore != 0 ? byScore : Integer.compare(a.getDocument(), b.getDocument());
+            }
+        });
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    /** Reads the full definition of a search result from the document store. */
+    public synchronized Definition getDefinition(SearchHit hit) throws IOException {
+        return documents.get(hit.getDocument());
+    }
+
+    synchronized PostingList postings(String term) throws IOException {
+        List<PostingList> lists = new ArrayList<>();
+        for (DiskSegment segment : segments) {
+            PostingList postings = segment.postings(term);
+            if (postings.size() > 0)
+                lists.add(postings);
+        }
+        PostingList.Builder builder = memorySegment.get(term);
+        if (builder != null)
+            lists.add(builder.build());
+        return lists.isEmpty() ? PostingList.EMPTY : PostingList.concat(lists);
+    }
+
+    /** Writes the documents indexed in memory to a new segment, merging it with the newest segments of similar size.
+     */
+    public synchronized void flush() throws IOException {
+        if (memoryDocuments == 0)
+            return;
+        Path path = directory.resolve(nextSegmentName());
+        try (DiskSegment.Writer writer = new DiskSegment.Writer(path)) {
+            for (Map.Entry<String, PostingList.Builder> entry : memorySegment.entrySet())
+                writer.add(entry.getKey(), entry.getValue().build());
+        }
+        segments.add(new DiskSegment(path));
+        indexedDocuments = documents.size();
+        memorySegment = new TreeMap<>();
+        memoryDocuments = 0;
+        writeManifest();
+        mergeTiers();
+    }
+
+    /** Merges the newest segments while each is at most MERGE_FACTOR times as large as the one after it, then merges
+     * the newest (and smallest) segments if there are still more than maxSegments.
+     */
+    private void mergeTiers() throws IOException {
+        while (true) {
+            int from = segments.size() - 1;
+            while (from > 0 && segments.get(from - 1).size() <= MERGE_FACTOR * segments.get(from).size())
+                from--;
+            if (from >= segments.size() - 1)
+                break;
+            merge(from, segments.size());
+        }
+        if (segments.size() > maxSegments)
+            merge(Math.max(0, maxSegments - 1), segments.size());
+    }
+
+    /** Merges every segment into a single one. */
+    public synchronized void merge() throws IOException {
+        merge(0, segments.size());
+    }
+
+    /** Merges a range of segments into one. Segments cover consecutive document ranges in creation order, so the
+     * posting lists of each term can simply be concatenated.
+     */
+    private void merge(int from, int to) throws IOException {
+        if (to - from < 2)
+            return;
+        List<DiskSegment> merged = new ArrayList<>(segments.subList(from, to));
+        TreeSet<String> terms = new TreeSet<>();
+        for (DiskSegment segment : merged)
+            terms.addAll(segment.terms());
+        Path path = directory.resolve(nextSegmentName());
+        try (DiskSegment.Writer writer = new DiskSegment.Writer(path)) {
+            List<PostingList> lists = new ArrayList<>();
+            for (String term : terms) {
+                lists.clear();
+                for (DiskSegment segment : merged)
+                    lists.add(segment.postings(term));
+                writer.add(term, PostingList.concat(lists));
+            }
+        }
+        segments.subList(from, to).clear();
+        segments.add(from, new DiskSegment(path));
+        writeManifest();
+        for (DiskSegment segment : merged) {
+            segment.close();
+            Files.deleteIfExists(segment.getPath());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (DiskSegment segment : segments)
+            segment.close();
+        documents.close();
+    }
+
+    private void indexInMemory(int document, Definition definition) {
+        Map<String, List<Integer>> positionsByTerm = new LinkedHashMap<>();
+        List<String> terms = TextAnalyzer.analyze(definition.getDefinition());
+        for (int position = 0; position < terms.size(); position++) {
+            List<Integer> positions = positionsByTerm.get(terms.get(position));
+            if (positions == null)
+                positionsByTerm.put(terms.get(position), positions = new ArrayList<>());
+            positions.add(position);
+        }
+        for (Map.Entry<String, List<Integer>> entry : positionsByTerm.entrySet()) {
+            int[] positions = new int[entry.getValue().size()];
+            for (int i = 0; i < positions.length; i++)
+                positions[i] = entry.getValue().get(i);
+            PostingList.Builder builder = memorySegment.get(entry.getKey());
+            if (builder == null)
+                memorySegment.put(entry.getKey(), builder = new PostingList.Builder());
+            builder.add(document, positions);
+        }
+        memoryDocuments++;
+    }
+
+    private String nextSegmentName() {
+        return "segment-" + (nextSegmentNumber++) + ".idx";
+    }
+
+    // Manifest format: number of documents covered by the segments, next segment number, then one segment per line
+    private void readManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest))
+            return;
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        indexedDocuments = Integer.parseInt(lines.get(0).trim());
+        nextSegmentNumber = Integer.parseInt(lines.get(1).trim());
+        for (String name : lines.subList(2, lines.size()))
+            if (!name.trim().isEmpty())
+                segments.add(new DiskSegment(directory.resolve(name.trim())));
+    }
+
+    private void writeManifest() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.valueOf(indexedDocuments));
+        lines.add(String.valueOf(nextSegmentNumber));
+        for (DiskSegment segment : segments)
+            lines.add(segment.getPath().getFileName().toString());
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        Files.write(temporary, lines, StandardCharsets.UTF_8);
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
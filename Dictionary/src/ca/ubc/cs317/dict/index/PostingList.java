@@ -0,0 +1,133 @@
+package ca.ubc.cs317.dict.index;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The documents containing a term, in increasing document order, with the positions of the term in each document.
+ *
+ * Posting lists are stored compressed: the number of documents, then for each document the gap from the previous
+ * document id, the number of occurrences and the gaps between consecutive positions, all as variable-length integers
+ * (7 bits per byte, high bit set on every byte but the last).
+ */
+class PostingList {
+
+    static final PostingList EMPTY = new PostingList(new int[0], new int[0][]);
+
+    private final int[] documents;
+    private final int[][] positions;
+
+    PostingList(int[] documents, int[][] positions) {
+        this.documents = documents;
+        this.positions = positions;
+    }
+
+    int size() {
+        return documents.length;
+    }
+
+    int document(int i) {
+        return documents[i];
+    }
+
+    int[] positions(int i) {
+        return positions[i];
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(documents.length * 4 + 4);
+        writeVarInt(out, documents.length);
+        int previousDocument = 0;
+        for (int i = 0; i < documents.length; i++) {
+            writeVarInt(out, documents[i] - previousDocument);
+            previousDocument = documents[i];
+            writeVarInt(out, positions[i].length);
+            int previousPosition = 0;
+            for (int position : positions[i]) {
+                writeVarInt(out, position - previousPosition);
+                previousPosition = position;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static PostingList decode(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int count = readVarInt(in);
+        int[] documents = new int[count];
+        int[][] positions = new int[count][];
+        int document = 0;
+        for (int i = 0; i < count; i++) {
+            document += readVarInt(in);
+            documents[i] = document;
+            positions[i] = new int[readVarInt(in)];
+            int position = 0;
+            for (int j = 0; j < positions[i].length; j++) {
+                position += readVarInt(in);
+                positions[i][j] = position;
+            }
+        }
+        return new PostingList(documents, positions);
+    }
+
+    /** Joins posting lists covering consecutive, non-overlapping ranges of documents, given in document order. */
+    static PostingList concat(List<PostingList> lists) {
+        if (lists.size() == 1)
+            return lists.get(0);
+        int total = 0;
+        for (PostingList list : lists)
+            total += list.size();
+        int[] documents = new int[total];
+        int[][] positions = new int[total][];
+        int offset = 0;
+        for (PostingList list : lists) {
+            System.arraycopy(list.documents, 0, documents, offset, list.size());
+            System.arraycopy(list.positions, 0, positions, offset, list.size());
+            offset += list.size();
+        }
+        return new PostingList(documents, positions);
+    }
+
+    /** Accumulates the postings of a term while documents are added to an in-memory segment. */
+    static class Builder {
+        private int[] documents = new int[4];
+        private int[][] positions = new int[4][];
+        private int size = 0;
+
+        void add(int document, int[] documentPositions) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            documents[size] = document;
+            positions[size] = documentPositions;
+            size++;
+        }
+
+        PostingList build() {
+            return new PostingList(Arrays.copyOf(documents, size), Arrays.copyOf(positions, size));
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,30 @@
+package ca.ubc.cs317.dict.index;
+
+/**
+ * A definition matching a reverse lookup query. The full definition can be retrieved with
+ * InvertedIndex.getDefinition.
+ */
+public class SearchHit {
+
+    private final int document;
+    private final String databaseName;
+    private final double score;
+
+    SearchHit(int document, String databaseName, double score) {
+        this.document = document;
+        this.databaseName = databaseName;
+        this.score = score;
+    }
+
+    int getDocument() {
+        return document;
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,111 @@
+package ca.ubc.cs317.dict.net;
+
+/**
+ * Finds how many requests can be in flight to a server at the same time, using additive increase and multiplicative
+ * decrease (AIMD). Public DICT servers limit the connections and commands of each client, and going over those limits
+ * brings errors and reconnections rather than more throughput, so the limit is found by probing instead of being
+ * configured for each server:
+ * <ul>
+ *     <li>While replies are fast and the limit is actually in use, it grows by about one for every limit requests.</li>
+ *     <li>When the average latency rises well above the lowest latency seen recently (requests are queueing at the
+ *     server), the limit shrinks by DECREASE.</li>
+ *     <li>When the server refuses a connection or a command with a transient (4xx) reply, or a request times out, the
+ *     limit shrinks by BACKOFF.</li>
+ * </ul>
+ * The limit shrinks at most once per round trip, since the requests already in flight when congestion is detected
+ * report the same congestion.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    public static final int INITIAL_LIMIT = 2;
+    /** Ratio between the average and the baseline latency above which the server is considered congested. */
+    public static final double TOLERANCE = 2.0;
+    /** Latency inflation too small to count as congestion, whatever the ratio (e.g., on a fast local network). */
+    public static final long MIN_INFLATION_NANOS = 5000000L;
+    public static final double DECREASE = 0.9;
+    public static final double BACKOFF = 0.5;
+    /** Number of samples after which the baseline latency starts forgetting older samples. */
+    public static final int BASELINE_WINDOW = 100;
+
+    private final int maxLimit;
+    private double limit;
+    private long previousWindowMinNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples = 0;
+    private double smoothedNanos = 0;
+    private long nextDecreaseNanos = System.nanoTime();
+    private long congestionEvents = 0;
+
+    /**
+     * @param maxLimit Highest limit allowed, e.g., the number of connections in the pool.
+     */
+    public AdaptiveConcurrencyLimiter(int maxLimit) {
+        if (maxLimit < 1)
+            throw new IllegalArgumentException("The limit must allow at least one request");
+        this.maxLimit = maxLimit;
+        this.limit = Math.min(maxLimit, INITIAL_LIMIT);
+    }
+
+    /** Returns the number of requests that may currently be in flight, between 1 and the maximum limit. */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /** Records the latency of a request the server carried out.
+     *
+     * @param latencyNanos Time the server took to reply, per command sent.
+     * @param saturated    Whether requests were held back by the limit when this one completed. The limit only grows
+     *                     if it is what held requests back.
+     */
+    public synchronized void onSample(long latencyNanos, boolean saturated) {
+        if (windowSamples++ == BASELINE_WINDOW) {
+            previousWindowMinNanos = windowMinNanos;
+            windowMinNanos = Long.MAX_VALUE;
+            windowSamples = 1;
+        }
+        windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+        smoothedNanos = smoothedNanos == 0 ? latencyNanos : 0.8 * smoothedNanos + 0.2 * latencyNanos;
+
+        long baselineNanos = Math.min(windowMinNanos, previousWindowMinNanos);
+        if (smoothedNanos > baselineNanos * TOLERANCE && smoothedNanos - baselineNanos > MIN_INFLATION_NANOS)
+            decrease(DECREASE);
+        else if (saturated)
+            limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+
+    /** Records a sign that the server is overloaded or refusing work: a transient negative reply, a refused
+     * connection, or a timeout.
+     */
+    public synchronized void onCongestion() {
+        decrease(BACKOFF);
+    }
+
+    private void decrease(double factor) {
+        long now = System.nanoTime();
+        if (now - nextDecreaseNanos < 0)
+            return;
+        congestionEvents++;
+        limit = Math.max(1, limit * factor);
+        nextDecreaseNanos = now + Math.max(1000000L, (long) smoothedNanos);
+    }
+
+    /** Returns the lowest recent latency per command, in milliseconds, or -1 if no request has completed yet. */
+    public synchronized double getBaselineLatencyMillis() {
+        long baselineNanos = Math.min(windowMinNanos, previousWindowMinNanos);
+        return baselineNanos == Long.MAX_VALUE ? -1 : baselineNanos / 1e6;
+    }
+
+    /** Returns the average recent latency per command, in milliseconds, or -1 if no request has completed yet. */
+    public synchronized double getAverageLatencyMillis() {
+        return smoothedNanos == 0 ? -1 : smoothedNanos / 1e6;
+    }
+
+    /** Returns the number of times the limit was decreased. */
+    public synchronized long getCongestionEvents() {
+        return congestionEvents;
+    }
+}
@@ -0,0 +1,92 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays popular queries in the background so their results are already in the caches when the user asks for
+ * them. Queries are issued one at a time, at a limited rate and with PREFETCH priority, so warming up never takes
+ * more than one connection away from interactive requests, and gives it up to them whenever they are waiting.
+ */
+public class CacheWarmer {
+
+    private final RequestScheduler scheduler;
+    private final List<QueryLog.Query> queries;
+    private final double queriesPerSecond;
+    private volatile Thread thread;
+
+    /**
+     * @param scheduler        Scheduler of the pool whose connections share the caches to be warmed.
+     * @param queries          Queries to be replayed, in order.
+     * @param queriesPerSecond Maximum rate at which queries are sent to the server.
+     */
+    public CacheWarmer(RequestScheduler scheduler, List<QueryLog.Query> queries, double queriesPerSecond) {
+        this.scheduler = scheduler;
+        this.queries = new ArrayList<>(queries);
+        this.queriesPerSecond = queriesPerSecond;
+    }
+
+    /** Starts replaying the queries in a background thread. */
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                warm();
+            }
+        }, "cache-warmer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /** Stops replaying queries. A query that is already in progress is allowed to complete. */
+    public synchronized void stop() {
+        if (thread != null)
+            thread.interrupt();
+    }
+
+    private void warm() {
+        long intervalMillis = (long) (1000 / queriesPerSecond);
+        int warmed = 0;
+        for (QueryLog.Query query : queries) {
+            if (Thread.currentThread().isInterrupted())
+                break;
+            long start = System.currentTimeMillis();
+            try {
+                replay(query);
+                warmed++;
+            } catch (DictConnectionException e) {
+                // A query that fails now (e.g., a database that no longer exists, or one refused because the
+                // connections are busy) is just not warmed
+                if (Thread.currentThread().isInterrupted())
+                    break;
+            }
+            try {
+                Thread.sleep(Math.max(0, intervalMillis - (System.currentTimeMillis() - start)));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        System.out.println("Cache warm-up finished: " + warmed + " of " + queries.size() + " queries");
+    }
+
+    private void replay(final QueryLog.Query query) throws DictConnectionException {
+        scheduler.execute(RequestScheduler.Priority.PREFETCH, new RequestScheduler.Request<Void>() {
+            @Override
+            public Void execute(DictionaryConnection connection) throws DictConnectionException {
+                Database database = new Database(query.getDatabase(), "");
+                if (query.isDefine())
+                    connection.getDefinitions(query.getWord(), database);
+                else
+                    connection.getMatchList(query.getWord(), new MatchingStrategy(query.getStrategy(), ""), database);
+                return null;
+            }
+        });
+    }
+}
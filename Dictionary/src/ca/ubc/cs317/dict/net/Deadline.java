@@ -0,0 +1,54 @@
+package ca.ubc.cs317.dict.net;
+
+/**
+ * The time by which a request must be complete. Deadlines are measured with System.nanoTime, so they are not affected
+ * by changes to the wall clock.
+ */
+public class Deadline {
+
+    /** A deadline that never expires. */
+    public static final Deadline NONE = new Deadline(0, false);
+
+    private final long expiryNanos;
+    private final boolean bounded;
+
+    private Deadline(long expiryNanos, boolean bounded) {
+        this.expiryNanos = expiryNanos;
+        this.bounded = bounded;
+    }
+
+    /** Creates a deadline a number of milliseconds from now.
+     *
+     * @param millis Time allowed, or 0 (or less) for no deadline.
+     */
+    public static Deadline after(long millis) {
+        if (millis <= 0)
+            return NONE;
+        return new Deadline(System.nanoTime() + millis * 1000000L, true);
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public boolean isExpired() {
+        return bounded && System.nanoTime() - expiryNanos >= 0;
+    }
+
+    /** Milliseconds left before the deadline, rounded up; 0 or less once it expired, Long.MAX_VALUE if unbounded. */
+    public long remainingMillis() {
+        if (!bounded)
+            return Long.MAX_VALUE;
+        long remainingNanos = expiryNanos - System.nanoTime();
+        return remainingNanos <= 0 ? 0 : (remainingNanos + 999999) / 1000000;
+    }
+
+    /** Returns whichever of this deadline and another one expires first. */
+    public Deadline earliest(Deadline other) {
+        if (!other.bounded)
+            return this;
+        if (!bounded)
+            return other;
+        return expiryNanos - other.expiryNanos <= 0 ? this : other;
+    }
+}
@@ -1,9 +1,13 @@
 package ca.ubc.cs317.dict.net;
 
 import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.exception.DictConnectionLostException;
+import ca.ubc.cs317.dict.exception.DictServerBusyException;
+import ca.ubc.cs317.dict.exception.DictTimeoutException;
 import ca.ubc.cs317.dict.model.Database;
 import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.store.LocalDictionary;
 import ca.ubc.cs317.dict.util.DictStringParser;
 
 import java.io.*;
@@ -15,17 +19,32 @@ import java.util.*;
  */
 public class DictionaryConnection {
 
-    private static final int DEFAULT_PORT = 2628;
+    public static final int DEFAULT_PORT = 2628;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 20000;
 
     private Socket socket;
     private BufferedReader input;
     private PrintWriter output;
     private DictStringParser dictStringParser;
+    private NegativeCache negativeCache = new NegativeCache();
+    private ResponseCache responseCache = new ResponseCache();
+    private LocalDictionary localDictionary;
+
+    private final int readTimeoutMillis;
+    private long requestTimeoutMillis = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+    private Deadline deadline;   // Deadline of the request in progress, if any
+    private int socketTimeout = -1;
+    private boolean broken = false;
+    private long commandsSent = 0;
+    private long linesRead = 0;
+    private boolean reused = false;
 
     private Map<String, Database> databaseMap = new LinkedHashMap<String, Database>();
 
     /** Establishes a new connection with a DICT server using an explicit host and port number, and handles initial
-     * welcome messages.
+     * welcome messages. The default connect and read timeouts are used.
      *
      * @param host Name of the host where the DICT server is running
      * @param port Port number used by the DICT server
@@ -33,22 +52,88 @@ public class DictionaryConnection {
      * don't match their expected value.
      */
     public DictionaryConnection(String host, int port) throws DictConnectionException {
+        this(host, port, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /** Establishes a new connection with a DICT server using an explicit host and port number and explicit timeouts,
+     * and handles initial welcome messages.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @param connectTimeoutMillis Time allowed to establish the connection, or 0 to wait indefinitely.
+     * @param readTimeoutMillis Time allowed for each line of a reply to arrive, or 0 to wait indefinitely.
+     * @throws DictTimeoutException If the connection or the welcome message take longer than allowed.
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     * don't match their expected value.
+     */
+    public DictionaryConnection(String host, int port, int connectTimeoutMillis, int readTimeoutMillis)
+            throws DictConnectionException {
+        this(host, port, connectTimeoutMillis, readTimeoutMillis, null);
+    }
+
+    /** Establishes a new connection with a DICT server using an explicit host and port number and explicit timeouts,
+     * and handles initial welcome messages. Everything sent and received is recorded.
+     *
+     * @param recorder Recorder of the bytes exchanged with the server, or null not to record them.
+     * @see #DictionaryConnection(String, int, int, int)
+     */
+    public DictionaryConnection(String host, int port, int connectTimeoutMillis, int readTimeoutMillis,
+                                SessionRecorder recorder) throws DictConnectionException {
+        this.readTimeoutMillis = readTimeoutMillis;
         try{
             this.dictStringParser = new DictStringParser();
-            this.socket = new Socket(host, port);
-            this.output = new PrintWriter(socket.getOutputStream(), true);
-            this.input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            String in = input.readLine();
-            if(!in.startsWith("220")){
-                throw new DictConnectionException("Could not Connect.  Please try again.");        
-            } else{
-                System.out.println("Sucessfully connected to " + host + " on port: " + port);
+            this.socket = new Socket();
+            this.socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            InputStream socketInput = socket.getInputStream();
+            OutputStream socketOutput = socket.getOutputStream();
+            if (recorder != null) {
+                int session = recorder.startSession();
+                socketInput = recorder.recordInput(session, socketInput);
+                socketOutput = recorder.recordOutput(session, socketOutput);
             }
+            this.output = new PrintWriter(socketOutput, true);
+            this.input = new BufferedReader(new InputStreamReader(socketInput));
+            readWelcome();
+            System.out.println("Sucessfully connected to " + host + " on port: " + port);
+        } catch (SocketTimeoutException e) {
+            closeSocket();
+            throw new DictTimeoutException("Timed out connecting to " + host + " on port " + port, e);
+        } catch (DictConnectionException e) {
+            closeSocket();
+            throw e;
         } catch(Exception e) {
+            closeSocket();
             throw new DictConnectionException("Something went wrong with the connetion: " + e.getMessage(), e);
         }
     }
 
+    /** Establishes a connection over streams that are already open, such as a tunnel or a recorded session being
+     * replayed, and handles initial welcome messages. There is no socket, so the read timeout does not apply; a
+     * deadline only fails a request once it has expired between two lines.
+     *
+     * @param input  Stream of the server's replies, starting with the welcome message.
+     * @param output Stream the commands are written to.
+     * @throws DictConnectionException If the welcome message can't be read or doesn't match its expected value.
+     */
+    public DictionaryConnection(InputStream input, OutputStream output) throws DictConnectionException {
+        this.readTimeoutMillis = 0;
+        this.dictStringParser = new DictStringParser();
+        this.output = new PrintWriter(output, true);
+        this.input = new BufferedReader(new InputStreamReader(input));
+        readWelcome();
+    }
+
+    private void readWelcome() throws DictConnectionException {
+        String in = readLine();
+        if (isTransientNegativeReply(in)) {
+            // Typically 420 when the client already has too many connections; the server will hang up
+            throw new DictServerBusyException(Integer.parseInt(in.substring(0, 3)), "The server refused the "
+                    + "connection: " + in);
+        } else if(!in.startsWith("220")){
+            throw new DictConnectionException("Could not Connect.  Please try again.");
+        }
+    }
+
     /** Establishes a new connection with a DICT server using an explicit host, with the default DICT port number, and
      * handles initial welcome messages.
      *
@@ -60,21 +145,100 @@ public class DictionaryConnection {
         this(host, DEFAULT_PORT);
     }
 
+    /** Replaces the cache of queries known to have no match, so it can be shared with other connections to the same
+     * server.
+     *
+     * @param negativeCache The cache to be consulted before, and updated after, each MATCH and DEFINE command.
+     */
+    public synchronized void setNegativeCache(NegativeCache negativeCache) {
+        this.negativeCache = negativeCache;
+    }
+
+    /** Replaces the cache of recent MATCH and DEFINE results, so it can be shared with other connections to the same
+     * server.
+     *
+     * @param responseCache The cache to be consulted before, and updated after, each MATCH and DEFINE command.
+     */
+    public synchronized void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /** Sets the databases available on local disk. DEFINE commands for these databases, and MATCH commands they can
+     * answer, are served from the local copy instead of the server.
+     *
+     * @param localDictionary The local databases, or null to send every command to the server.
+     */
+    public synchronized void setLocalDictionary(LocalDictionary localDictionary) {
+        this.localDictionary = localDictionary;
+    }
+
+    /** Sets the time allowed for a whole request (all lines of its reply), used by the methods that don't take an
+     * explicit deadline.
+     *
+     * @param requestTimeoutMillis Time allowed, or 0 for no limit other than the read timeout.
+     */
+    public synchronized void setRequestTimeout(long requestTimeoutMillis) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    /** Checks whether the connection failed in a way that leaves it unusable: a timeout, an I/O error, or the server
+     * closing the connection. Once broken, every request fails immediately, and the connection should be discarded.
+     */
+    public synchronized boolean isBroken() {
+        return broken;
+    }
+
+    /** Returns the number of commands sent to the server so far. Requests answered from a cache or a local database
+     * don't send any.
+     */
+    public synchronized long getCommandsSent() {
+        return commandsSent;
+    }
+
+    /** Returns the number of lines received from the server so far, including the welcome message. */
+    public synchronized long getLinesRead() {
+        return linesRead;
+    }
+
+    /** Checks whether the connection was idle in a pool before its current use, and so may have been closed by the
+     * server in the meantime.
+     */
+    synchronized boolean isReused() {
+        return reused;
+    }
+
+    synchronized void setReused(boolean reused) {
+        this.reused = reused;
+    }
+
     /** Sends the final QUIT message and closes the connection with the server. This function ignores any exception that
      * may happen while sending the message, receiving its reply, or closing the connection.
      *
      */
     public synchronized void close(){
+        if (disconnect())
+            System.exit(0);
+    }
+
+    /** Sends the final QUIT message and closes the connection with the server, without terminating the application.
+     * This is used by connections that are part of a pool, which come and go while the UI keeps running. Like close,
+     * this function ignores any exception that may happen while sending the message or closing the connection.
+     *
+     * @return true if the connection was closed cleanly, false if an error happened while closing it.
+     */
+    public synchronized boolean disconnect(){
         System.out.println("Terminating connection to dict server.");
         this.output.println("QUIT");
         try {
             this.input.close();
             this.output.close();
-            this.socket.close();
+            if (this.socket != null)
+                this.socket.close();
             System.out.println("Connection terminated");
-            System.exit(0);
+            return true;
         } catch(Exception e) {
             System.out.println("Error while terminating presentation.");
+            return false;
         }
     }
 
@@ -89,11 +253,130 @@ public class DictionaryConnection {
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
     public synchronized Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        return getDefinitions(word, database, Deadline.after(requestTimeoutMillis));
+    }
+
+    /** Requests and retrieves all definitions for a specific word, failing if the reply is not complete by a deadline.
+     *
+     * @param word The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition, as in getDefinitions(String, Database).
+     * @param deadline Time by which the whole reply must have been received.
+     * @return A collection of Definition objects containing all definitions returned by the server.
+     * @throws DictTimeoutException If the deadline or the read timeout expires. The connection is then broken.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    public synchronized Collection<Definition> getDefinitions(String word, Database database, Deadline deadline)
+            throws DictConnectionException {
+        Deadline previous = beginRequest(deadline);
+        try {
+            return fetchDefinitions(word, database);
+        } finally {
+            this.deadline = previous;
+        }
+    }
+
+    private Collection<Definition> fetchDefinitions(String word, Database database) throws DictConnectionException {
         Collection<Definition> set = new ArrayList<>();
         getDatabaseList(); // Ensure the list of databases has been populated
-        this.output.println("DEFINE " + database.getName() + " " + "\""+ word + "\"");
+        if (negativeCache.isKnownMiss(NegativeCache.DEFINE, database.getName(), word))
+            return set;
+        Collection<Definition> cached = responseCache.getDefinitions(database.getName(), word);
+        if (cached != null)
+            return cached;
+        if (localDictionary != null && localDictionary.canAnswer(database)) {
+            try {
+                return localDictionary.getDefinitions(word, database);
+            } catch (IOException e) {
+                System.out.println("Could not read local definitions, using the server: " + e.getMessage());
+            }
+        }
+        send("DEFINE " + database.getName() + " " + "\""+ word + "\"");
+        set = readDefinitions(word, database);
+        responseCache.putDefinitions(database.getName(), word, set);
+        return set;
+    }
+
+    /** Requests and retrieves all definitions for several words in the same database. Up to window DEFINE commands are
+     * sent before their replies are read (pipelining), so a batch of words costs about one round trip per window
+     * instead of one per word. Words whose result is already cached are not sent to the server.
+     *
+     * @param words    The words whose definitions are to be retrieved.
+     * @param database The database to be used to retrieve the definitions.
+     * @param window   Maximum number of commands sent ahead of the replies read.
+     * @return A map from each word to the definitions returned by the server (possibly empty), in the order of words.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected
+     * value. If the replies to later commands were still pending, the connection is then broken, since they would
+     * otherwise be read as the replies to the next requests.
+     */
+    public synchronized Map<String, Collection<Definition>> getDefinitions(List<String> words, Database database,
+                                                                      int window) throws DictConnectionException {
+        // A batch can be arbitrarily large, so only the read timeout applies to it by default
+        return getDefinitions(words, database, window, Deadline.NONE);
+    }
+
+    /** Requests and retrieves all definitions for several words in the same database, with pipelining, failing if
+     * all replies have not been received by a deadline.
+     *
+     * @param deadline Time by which every reply must have been received.
+     * @throws DictTimeoutException If the deadline or the read timeout expires. The connection is then broken.
+     * @see #getDefinitions(List, Database, int)
+     */
+    public synchronized Map<String, Collection<Definition>> getDefinitions(List<String> words, Database database,
+                                                                      int window, Deadline deadline)
+            throws DictConnectionException {
+        Deadline previous = beginRequest(deadline);
+        try {
+            return fetchDefinitions(words, database, window);
+        } finally {
+            this.deadline = previous;
+        }
+    }
+
+    private Map<String, Collection<Definition>> fetchDefinitions(List<String> words, Database database, int window)
+            throws DictConnectionException {
+        Map<String, Collection<Definition>> result = new LinkedHashMap<>();
+        getDatabaseList(); // Ensure the list of databases has been populated
+        List<String> pending = new ArrayList<>();
+        if (localDictionary != null && localDictionary.canAnswer(database)) {
+            for (String word : words)
+                result.put(word, fetchDefinitions(word, database));
+            return result;
+        }
+        for (String word : words) {
+            Collection<Definition> cached = responseCache.getDefinitions(database.getName(), word);
+            if (negativeCache.isKnownMiss(NegativeCache.DEFINE, database.getName(), word))
+                result.put(word, new ArrayList<Definition>());
+            else if (cached != null)
+                result.put(word, cached);
+            else {
+                result.put(word, null);
+                pending.add(word);
+            }
+        }
+        int sent = 0;
+        for (int received = 0; received < pending.size(); received++) {
+            while (sent < pending.size() && sent - received < Math.max(1, window))
+                send("DEFINE " + database.getName() + " " + "\"" + pending.get(sent++) + "\"");
+            String word = pending.get(received);
+            Collection<Definition> definitions;
+            try {
+                definitions = readDefinitions(word, database);
+            } catch (DictConnectionException e) {
+                // The replies to the commands sent after this one are still on their way
+                if (sent > received + 1)
+                    markBroken();
+                throw e;
+            }
+            responseCache.putDefinitions(database.getName(), word, definitions);
+            result.put(word, definitions);
+        }
+        return result;
+    }
+
+    private Collection<Definition> readDefinitions(String word, Database database) throws DictConnectionException {
+        Collection<Definition> set = new ArrayList<>();
         try{
-            String in = this.input.readLine();
+            String in = readLine();
             String statusCode;
             String[] inputSplitIntoDictAtoms;
             readInput:
@@ -106,6 +389,7 @@ public class DictionaryConnection {
                         throw new Exception("Invalid Database provided with name: " + database.getName());
                     case "552": // No matches found
                         System.out.println("No matches found");
+                        negativeCache.recordMiss(NegativeCache.DEFINE, database.getName(), word);
                     case "250":
                         break readInput; //Breaks out of the while loop
                     case "150": // Got definitions
@@ -117,10 +401,14 @@ public class DictionaryConnection {
                     case "501":
                         throw new Exception("Invalid syntax. Illegal parameters");
                     default:
+                        if (isTransientNegativeReply(in))
+                            throw new DictServerBusyException(Integer.parseInt(statusCode), "The server is busy: " + in);
                         throw new Exception("Encountered an unexpected error");
                 }
-                in = this.input.readLine();
+                in = readLine();
             }
+        } catch (DictConnectionException e) {
+            throw e;
         } catch (Exception e){
             throw new DictConnectionException("Encountered an error while finding definitions: " + e.getMessage());
         }
@@ -172,14 +460,14 @@ public class DictionaryConnection {
             String in;
             String[] inputSplitIntoDictAtoms;
             for(int i = 0; i < numberOfDefinitions; i++){
-                in = this.input.readLine(); // 151 "obligatory" moby-thesaurus "Moby Thesaurus II by Grady Ward, 1.0"
+                in = readLine(); // 151 "obligatory" moby-thesaurus "Moby Thesaurus II by Grady Ward, 1.0"
                 inputSplitIntoDictAtoms = dictStringParser.splitAtoms(in);
                 String definitionDatabaseName = inputSplitIntoDictAtoms[2];
                 String definitionWord = inputSplitIntoDictAtoms[1];
                 Database definitionDatabase = databaseMap.get(definitionDatabaseName);
                 Definition definition = new Definition(definitionWord, definitionDatabase);
                 while(true){
-                    in = this.input.readLine();
+                    in = readLine();
                     if(in.equals(".")){ //Definiton ends with "."
                          break;
                     }
@@ -188,6 +476,8 @@ public class DictionaryConnection {
                 set.add(definition);
             }
             return set;
+        } catch (DictConnectionException e) {
+            throw e;
         } catch (Exception e) {
             throw new DictConnectionException("There was an error while parsing the definitions");
         }
@@ -204,10 +494,80 @@ public class DictionaryConnection {
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
     public synchronized Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        return getMatchList(word, strategy, database, Deadline.after(requestTimeoutMillis));
+    }
+
+    /** Requests and retrieves a list of matches for a specific word pattern, failing if the reply is not complete by a
+     * deadline.
+     *
+     * @param deadline Time by which the whole reply must have been received.
+     * @throws DictTimeoutException If the deadline or the read timeout expires. The connection is then broken.
+     * @see #getMatchList(String, MatchingStrategy, Database)
+     */
+    public synchronized Set<String> getMatchList(String word, MatchingStrategy strategy, Database database,
+                                                 Deadline deadline) throws DictConnectionException {
+        Deadline previous = beginRequest(deadline);
+        try {
+            return fetchMatchList(word, strategy, database);
+        } finally {
+            this.deadline = previous;
+        }
+    }
+
+    private Set<String> fetchMatchList(String word, MatchingStrategy strategy, Database database)
+            throws DictConnectionException {
         Set<String> set = new LinkedHashSet<>();
-        this.output.println("MATCH " + database.getName() + " " + strategy.getName() + " " + "\"" + word + "\"");
+        if (negativeCache.isKnownMiss(strategy.getName(), database.getName(), word))
+            return set;
+        Set<String> cached = responseCache.getMatches(strategy.getName(), database.getName(), word);
+        if (cached != null)
+            return cached;
+        if (localDictionary != null && localDictionary.canAnswer(strategy, database)) {
+            try {
+                return localDictionary.getMatchList(word, strategy, database);
+            } catch (IllegalArgumentException e) {
+                // Not a pattern the local index can match exactly like the server would; let the server decide
+            }
+        }
+        for (Set<String> words : sendMatch(word, strategy, database).values())
+            set.addAll(words);
+        responseCache.putMatches(strategy.getName(), database.getName(), word, set);
+        return set;
+    }
+
+    /** Requests a list of matches in several databases at once, with a single command, and keeps them apart by the
+     * database they were found in. Unlike getMatchList, the result is not looked up in or added to the response cache,
+     * which has no room for the database of each match, so the caller can cache each database on its own.
+     *
+     * @param database The special database '*' or '!', or a regular database.
+     * @return A map from the name of each database with a match to its matches, in the order of the reply.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected
+     * value.
+     * @see #getMatchList(String, MatchingStrategy, Database)
+     */
+    public synchronized Map<String, Set<String>> getMatchesByDatabase(String word, MatchingStrategy strategy,
+                                                                      Database database)
+            throws DictConnectionException {
+        Deadline previous = beginRequest(Deadline.after(requestTimeoutMillis));
+        try {
+            if (negativeCache.isKnownMiss(strategy.getName(), database.getName(), word))
+                return new LinkedHashMap<>();
+            return sendMatch(word, strategy, database);
+        } finally {
+            this.deadline = previous;
+        }
+    }
+
+    /** Sends a MATCH command and reads its reply.
+     *
+     * @return A map from database name to the matches found in that database.
+     */
+    private Map<String, Set<String>> sendMatch(String word, MatchingStrategy strategy, Database database)
+            throws DictConnectionException {
+        Map<String, Set<String>> matches = new LinkedHashMap<>();
+        send("MATCH " + database.getName() + " " + strategy.getName() + " " + "\"" + word + "\"");
         try{
-            String in = this.input.readLine();
+            String in = readLine();
             String matchingWord, statusCode;
             String[] inputSplitIntoDictAtoms;
             readInput:
@@ -221,15 +581,20 @@ public class DictionaryConnection {
                         case "551": // Invalid strategy
                             throw new Exception("Invalid Strategy used with name: " + strategy.getName());
                         case "552": // No matches found
+                            negativeCache.recordMiss(strategy.getName(), database.getName(), word);
+                            break readInput;
                         case "250":
                             break readInput; //Breaks out of the while loop
                         case "152": // 152 4 matches found
                             int numberOfWords = Integer.parseInt(inputSplitIntoDictAtoms[1]);
                             for(int i = 0; i < numberOfWords; i++){
-                                in = this.input.readLine();
+                                in = readLine();
                                 inputSplitIntoDictAtoms = dictStringParser.splitAtoms(in);
                                 matchingWord = inputSplitIntoDictAtoms[1];
-                                set.add(matchingWord);
+                                Set<String> words = matches.get(inputSplitIntoDictAtoms[0]);
+                                if (words == null)
+                                    matches.put(inputSplitIntoDictAtoms[0], words = new LinkedHashSet<>());
+                                words.add(matchingWord);
                             }
                             break;
                         case ".":
@@ -237,14 +602,19 @@ public class DictionaryConnection {
                         case "501":
                             throw new Exception("Invalid syntax. Illegal parameters");
                         default:
+                            if (isTransientNegativeReply(in))
+                                throw new DictServerBusyException(Integer.parseInt(statusCode),
+                                        "The server is busy: " + in);
                             throw new Exception("Encountered an unexpected error");
                     }
-                    in = this.input.readLine();
+                    in = readLine();
                 }
+        } catch (DictConnectionException e) {
+            throw e;
         } catch (Exception e){
             throw new DictConnectionException(e.getMessage());
         }
-        return set;
+        return matches;
     }
 
     /** Requests and retrieves a list of all valid databases used in the server. In addition to returning the list, this
@@ -255,12 +625,32 @@ public class DictionaryConnection {
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
     public synchronized Collection<Database> getDatabaseList() throws DictConnectionException {
+        return getDatabaseList(Deadline.after(requestTimeoutMillis));
+    }
+
+    /** Requests and retrieves a list of all valid databases used in the server, failing if the reply is not complete
+     * by a deadline.
+     *
+     * @param deadline Time by which the whole reply must have been received.
+     * @throws DictTimeoutException If the deadline or the read timeout expires. The connection is then broken.
+     * @see #getDatabaseList()
+     */
+    public synchronized Collection<Database> getDatabaseList(Deadline deadline) throws DictConnectionException {
         if (!databaseMap.isEmpty()) return databaseMap.values();
-        this.output.println("SHOW DB");
+        Deadline previous = beginRequest(deadline);
+        try {
+            return fetchDatabaseList();
+        } finally {
+            this.deadline = previous;
+        }
+    }
+
+    private Collection<Database> fetchDatabaseList() throws DictConnectionException {
+        send("SHOW DB");
         try{
         	String in, statusCode, dbName, dbDescription;
             String[] splitAtoms;
-            in = this.input.readLine();
+            in = readLine();
         	readInput: while(in != null ) { // This while loop has label readInput
                 splitAtoms = dictStringParser.splitAtoms(in);
                 // splitAtoms returns an empty array if input line is "." or null
@@ -269,7 +659,7 @@ public class DictionaryConnection {
                     case("110"): // databases found no error. Staement: 110 72 databases present
                         int numberOfDatabases = Integer.parseInt(splitAtoms[1]);
                         for(int i = 0; i < numberOfDatabases; i++){
-                            in = this.input.readLine();
+                            in = readLine();
                             splitAtoms = dictStringParser.splitAtoms(in);
                             dbName = splitAtoms[0];
                             dbDescription = splitAtoms[1];
@@ -279,30 +669,113 @@ public class DictionaryConnection {
                     case("."):
                         break;
                     case("250"):
-                        break readInput; // This leaves the whole for loop otherwise the this.input.readLine() waits forever
+                        break readInput; // This leaves the whole for loop otherwise readLine() waits forever
                     case("554"):
                         break readInput;
                 }
-                in = this.input.readLine();
+                in = readLine();
             }
+        } catch (DictConnectionException e) {
+            throw e;
         } catch (Exception e){
         	throw new DictConnectionException("Encountered an error in obtaining the list of databases: " + e.getMessage());
         }
         return databaseMap.values();
     }
 
+    /** Requests and retrieves the information the server provides about a database (its source, version, license,
+     * etc.), as returned by the SHOW INFO command.
+     *
+     * @param database The database whose information is to be retrieved.
+     * @return The information text, with one line per line of the reply.
+     * @throws DictConnectionException If the database is not valid, the connection was interrupted or the messages
+     * don't match their expected value.
+     */
+    public synchronized String getDatabaseInfo(Database database) throws DictConnectionException {
+        return getDatabaseInfo(database, Deadline.after(requestTimeoutMillis));
+    }
+
+    /** Requests and retrieves the information the server provides about a database, failing if the reply is not
+     * complete by a deadline.
+     *
+     * @param deadline Time by which the whole reply must have been received.
+     * @throws DictTimeoutException If the deadline or the read timeout expires. The connection is then broken.
+     * @see #getDatabaseInfo(Database)
+     */
+    public synchronized String getDatabaseInfo(Database database, Deadline deadline) throws DictConnectionException {
+        Deadline previous = beginRequest(deadline);
+        try {
+            return fetchDatabaseInfo(database);
+        } finally {
+            this.deadline = previous;
+        }
+    }
+
+    private String fetchDatabaseInfo(Database database) throws DictConnectionException {
+        StringBuilder info = new StringBuilder();
+        send("SHOW INFO " + database.getName());
+        try{
+            String in, statusCode;
+            String[] splitAtoms;
+            in = readLine();
+            readInput: while(in != null ) {
+                splitAtoms = DictStringParser.splitAtoms(in);
+                statusCode = splitAtoms.length > 0 ? splitAtoms[0] : in;
+                switch(statusCode){
+                    case("112"): // 112 database information follows
+                        while(!(in = readLine()).equals(".")){
+                            info.append(in).append(System.lineSeparator());
+                        }
+                        break;
+                    case("250"):
+                        break readInput;
+                    case("550"): // Invalid database
+                        throw new Exception("Invalid database used with name: " + database.getName());
+                    default:
+                        throw new Exception("Encountered an unexpected error");
+                }
+                in = readLine();
+            }
+        } catch (DictConnectionException e) {
+            throw e;
+        } catch (Exception e){
+            throw new DictConnectionException("Encountered an error in obtaining the database information: " + e.getMessage());
+        }
+        return info.toString();
+    }
+
     /** Requests and retrieves a list of all valid matching strategies supported by the server.
      *
      * @return A set of MatchingStrategy objects supported by the server.
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
     public synchronized Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return getStrategyList(Deadline.after(requestTimeoutMillis));
+    }
+
+    /** Requests and retrieves a list of all valid matching strategies supported by the server, failing if the reply is
+     * not complete by a deadline.
+     *
+     * @param deadline Time by which the whole reply must have been received.
+     * @throws DictTimeoutException If the deadline or the read timeout expires. The connection is then broken.
+     * @see #getStrategyList()
+     */
+    public synchronized Set<MatchingStrategy> getStrategyList(Deadline deadline) throws DictConnectionException {
+        Deadline previous = beginRequest(deadline);
+        try {
+            return fetchStrategyList();
+        } finally {
+            this.deadline = previous;
+        }
+    }
+
+    private Set<MatchingStrategy> fetchStrategyList() throws DictConnectionException {
         Set<MatchingStrategy> strategySet = new LinkedHashSet<>();
-        this.output.println("SHOW STRAT");
+        send("SHOW STRAT");
         try{
             String in, statusCode, strategyName, strategyDescription;
             String[] splitAtoms;
-            in = this.input.readLine();
+            in = readLine();
             readInput: while(in != null ) { // This while loop has label readInput
                 splitAtoms = dictStringParser.splitAtoms(in);
                 // splitAtoms returns an empty array if input line is "." or null
@@ -311,7 +784,7 @@ public class DictionaryConnection {
                     case("111"): // databases found no error. Staement: 111 12 strategies present
                         int numberOfStrategies = Integer.parseInt(splitAtoms[1]);
                         for(int i = 0; i < numberOfStrategies; i++){
-                            in = this.input.readLine();
+                            in = readLine();
                             splitAtoms = dictStringParser.splitAtoms(in);
                             strategyName = splitAtoms[0];
                             strategyDescription = splitAtoms[1];
@@ -321,16 +794,107 @@ public class DictionaryConnection {
                     case("."):
                         break;
                     case("250"):
-                        break readInput; // This leaves the while loop. Otherwise the this.input.readLine() outside the switch waits forever for more input
+                        break readInput; // This leaves the while loop. Otherwise the readLine() outside the switch waits forever for more input
                     case("555"): //No strategies available
                         break readInput;
                 }
-                in = this.input.readLine();
+                in = readLine();
             }
+        } catch (DictConnectionException e) {
+            throw e;
         } catch (Exception e){
         	throw new DictConnectionException("Encountered an error in obtaining the list of strategies: " + e.getMessage());
         }
         return strategySet;
     }
 
+    /** Starts a request with a deadline. A request made while another one is in progress (e.g., the database list
+     * retrieved on the way to a definition) must also finish by the deadline of the outer request.
+     *
+     * @return The deadline to be restored when the request ends.
+     */
+    private Deadline beginRequest(Deadline requestDeadline) throws DictConnectionException {
+        if (broken)
+            throw new DictConnectionException("The connection is no longer usable after an earlier failure");
+        Deadline previous = this.deadline;
+        this.deadline = previous == null ? requestDeadline : previous.earliest(requestDeadline);
+        return previous;
+    }
+
+    private void send(String command) throws DictConnectionException {
+        if (broken)
+            throw new DictConnectionException("The connection is no longer usable after an earlier failure");
+        this.output.println(command);
+        commandsSent++;
+        if (this.output.checkError()) {
+            markBroken();
+            throw new DictConnectionLostException("Could not send the command to the server");
+        }
+    }
+
+    /** Reads a line of a reply, waiting at most the read timeout and no later than the deadline of the request in
+     * progress. A timeout, an I/O error or the end of the stream leaves the connection broken, since the rest of the
+     * reply can't be told apart from the reply to the next command.
+     *
+     * @throws DictTimeoutException If no line arrived in time.
+     * @throws DictConnectionException If the line can't be read.
+     */
+    private String readLine() throws DictConnectionException {
+        if (broken)
+            throw new DictConnectionException("The connection is no longer usable after an earlier failure");
+        long timeout = readTimeoutMillis;
+        if (deadline != null && deadline.isBounded()) {
+            long remaining = deadline.remainingMillis();
+            if (remaining <= 0) {
+                markBroken();
+                throw new DictTimeoutException("The request did not complete before its deadline");
+            }
+            timeout = timeout == 0 ? remaining : Math.min(timeout, remaining);
+        }
+        try {
+            if (socket != null && timeout != socketTimeout) {
+                socket.setSoTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+                socketTimeout = (int) timeout;
+            }
+            String line = this.input.readLine();
+            if (line == null) {
+                markBroken();
+                throw new DictConnectionLostException("The server closed the connection");
+            }
+            linesRead++;
+            return line;
+        } catch (SocketTimeoutException e) {
+            markBroken();
+            if (deadline != null && deadline.isExpired())
+                throw new DictTimeoutException("The request did not complete before its deadline", e);
+            throw new DictTimeoutException("No reply from the server within " + timeout + " ms", e);
+        } catch (IOException e) {
+            markBroken();
+            throw new DictConnectionLostException("Connection error: " + e.getMessage(), e);
+        }
+    }
+
+    /** Checks whether a status line is a transient negative reply (4xx): the server did not carry out the command,
+     * but may well do so if asked again later.
+     */
+    private static boolean isTransientNegativeReply(String line) {
+        return line.length() >= 3 && line.charAt(0) == '4' && Character.isDigit(line.charAt(1))
+                && Character.isDigit(line.charAt(2)) && (line.length() == 3 || line.charAt(3) == ' ');
+    }
+
+    /** Closes the socket of a connection that can't be used any more, so the server stops sending to it. */
+    private void markBroken() {
+        broken = true;
+        closeSocket();
+    }
+
+    private void closeSocket() {
+        try {
+            if (socket != null)
+                socket.close();
+        } catch (IOException e) {
+            // Ignored, the connection is being abandoned
+        }
+    }
+
 }
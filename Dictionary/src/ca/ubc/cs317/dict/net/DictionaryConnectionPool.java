@@ -0,0 +1,191 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.store.LocalDictionary;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bounded set of connections to the same DICT server. Connections are opened lazily the first time they are needed,
+ * and at most maxConnections of them are ever open (or borrowed) at the same time.
+ */
+public class DictionaryConnectionPool {
+
+    private final String host;
+    private final int port;
+    private final int maxConnections;
+
+    private final BlockingQueue<DictionaryConnection> idleConnections = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    private volatile NegativeCache negativeCache = new NegativeCache();
+    private volatile ResponseCache responseCache = new ResponseCache();
+    private volatile LocalDictionary localDictionary;
+    private volatile SessionRecorder sessionRecorder;
+    private volatile int connectTimeoutMillis = DictionaryConnection.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int readTimeoutMillis = DictionaryConnection.DEFAULT_READ_TIMEOUT_MILLIS;
+    private volatile long requestTimeoutMillis = DictionaryConnection.DEFAULT_REQUEST_TIMEOUT_MILLIS;
+    private volatile boolean closed = false;
+
+    /** Creates a new pool of connections to a DICT server. No connection is established until one is acquired.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @param maxConnections Maximum number of connections that may be open at the same time
+     */
+    public DictionaryConnectionPool(String host, int port, int maxConnections) {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("A pool needs at least one connection");
+        this.host = host;
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /** Sets the cache of queries known to have no match, shared by every connection the pool establishes from now on.
+     */
+    public void setNegativeCache(NegativeCache negativeCache) {
+        this.negativeCache = negativeCache;
+    }
+
+    /** Sets the cache of recent results, shared by every connection the pool establishes from now on.
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /** Sets the databases available on local disk, used by every connection the pool establishes from now on.
+     */
+    public void setLocalDictionary(LocalDictionary localDictionary) {
+        this.localDictionary = localDictionary;
+    }
+
+    /** Sets the recorder of the bytes exchanged by every connection the pool establishes from now on.
+     *
+     * @param sessionRecorder The recorder, or null not to record new connections.
+     */
+    public void setSessionRecorder(SessionRecorder sessionRecorder) {
+        this.sessionRecorder = sessionRecorder;
+    }
+
+    /** Sets the timeouts of every connection the pool establishes from now on. See the DictionaryConnection
+     * constructor and setRequestTimeout.
+     */
+    public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis, long requestTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    /** Borrows a connection from the pool, blocking until one is available. An idle connection is reused if there is
+     * one, otherwise a new connection is established. Every connection acquired must be handed back with either
+     * release or discard.
+     *
+     * @return A connection to the pool's server, for the exclusive use of the caller.
+     * @throws DictConnectionException If the pool is closed, the thread is interrupted while waiting, or a new
+     * connection can't be established.
+     */
+    public DictionaryConnection acquire() throws DictConnectionException {
+        return acquire(true);
+    }
+
+    /** Borrows a newly established connection from the pool, blocking until the pool allows one more. Idle
+     * connections are left alone, e.g., because one of them was just found closed by the server and the others may
+     * well be too.
+     *
+     * @see #acquire()
+     */
+    public DictionaryConnection acquireNew() throws DictConnectionException {
+        return acquire(false);
+    }
+
+    private DictionaryConnection acquire(boolean reuse) throws DictConnectionException {
+        if (closed)
+            throw new DictConnectionException("Connection pool is closed");
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DictConnectionException("Interrupted while waiting for a connection", e);
+        }
+        DictionaryConnection connection = reuse ? idleConnections.poll() : null;
+        if (connection != null) {
+            connection.setReused(true);
+            return connection;
+        }
+        try {
+            connection = new DictionaryConnection(host, port, connectTimeoutMillis, readTimeoutMillis, sessionRecorder);
+            connection.setRequestTimeout(requestTimeoutMillis);
+            connection.setNegativeCache(negativeCache);
+            connection.setResponseCache(responseCache);
+            connection.setLocalDictionary(localDictionary);
+            return connection;
+        } catch (DictConnectionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Returns a healthy connection to the pool so it can be reused by other callers. A connection that turns out to
+     * be broken (e.g., after a timeout the caller recovered from) is discarded instead.
+     *
+     * @param connection A connection previously obtained from acquire.
+     */
+    public void release(DictionaryConnection connection) {
+        if (closed || connection.isBroken())
+            connection.disconnect();
+        else
+            idleConnections.offer(connection);
+        permits.release();
+    }
+
+    /** Closes a connection that failed or is in an unknown state, instead of returning it to the pool. The pool will
+     * establish a fresh connection in its place the next time one is needed.
+     *
+     * @param connection A connection previously obtained from acquire.
+     */
+    public void discard(DictionaryConnection connection) {
+        connection.disconnect();
+        permits.release();
+    }
+
+    /** Closes idle connections until at most a number of them are left open.
+     *
+     * @param keep Number of idle connections that may stay open.
+     */
+    public void closeIdleConnections(int keep) {
+        DictionaryConnection connection;
+        while (idleConnections.size() > keep && (connection = idleConnections.poll()) != null)
+            connection.disconnect();
+    }
+
+    /** Closes all idle connections. Connections that are currently borrowed are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        DictionaryConnection connection;
+        while ((connection = idleConnections.poll()) != null)
+            connection.disconnect();
+    }
+}
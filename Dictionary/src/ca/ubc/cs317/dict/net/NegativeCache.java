@@ -0,0 +1,128 @@
+package ca.ubc.cs317.dict.net;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Remembers queries the server answered with 552 (no match), so they can be answered locally for a while. Misses are
+ * kept separately for each combination of strategy and database, and expire after a fixed time to live.
+ *
+ * Some strategies are monotonic, which lets a single miss answer many other queries: if nothing starts with "xqzt",
+ * nothing starts with "xqztab" either. The prefix, suffix and substring strategies are handled this way; any other
+ * strategy (and DEFINE) only short-circuits the exact same query.
+ */
+public class NegativeCache {
+
+    /** Pseudo-strategy name used to record DEFINE misses. */
+    public static final String DEFINE = "DEFINE";
+
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, LinkedHashMap<String, Long>> missesByKey = new HashMap<>();
+
+    public NegativeCache() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param ttlMillis  How long a miss is trusted after the server reported it.
+     * @param maxEntries Maximum number of misses kept for each strategy and database; the least recently used ones
+     *                   are forgotten first.
+     */
+    public NegativeCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /** Records that the server found no match for a query.
+     *
+     * @param strategy Name of the matching strategy, or DEFINE for a definition lookup.
+     * @param database Name of the database queried.
+     * @param word     The word or pattern queried.
+     */
+    public synchronized void recordMiss(String strategy, String database, String word) {
+        misses(strategy, database).put(normalize(word), System.currentTimeMillis() + ttlMillis);
+    }
+
+    /** Checks whether a query is known to have no match, either because the same query recently failed or because
+     * it is an extension of a failed query under a monotonic strategy.
+     *
+     * @param strategy Name of the matching strategy, or DEFINE for a definition lookup.
+     * @param database Name of the database to be queried.
+     * @param word     The word or pattern to be queried.
+     * @return true if the server is known to have no match for the query.
+     */
+    public synchronized boolean isKnownMiss(String strategy, String database, String word) {
+        LinkedHashMap<String, Long> misses = missesByKey.get(key(strategy, database));
+        if (misses == null || misses.isEmpty())
+            return false;
+        String normalized = normalize(word);
+        long now = System.currentTimeMillis();
+        switch (strategy) {
+            case "prefix":
+                for (int end = 1; end <= normalized.length(); end++)
+                    if (isLive(misses, normalized.substring(0, end), now))
+                        return true;
+                return false;
+            case "suffix":
+                for (int start = 0; start < normalized.length(); start++)
+                    if (isLive(misses, normalized.substring(start), now))
+                        return true;
+                return false;
+            case "substring":
+                for (Iterator<Map.Entry<String, Long>> it = misses.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<String, Long> miss = it.next();
+                    if (miss.getValue() < now)
+                        it.remove();
+                    else if (normalized.contains(miss.getKey()))
+                        return true;
+                }
+                return false;
+            default:
+                return isLive(misses, normalized, now);
+        }
+    }
+
+    public synchronized void clear() {
+        missesByKey.clear();
+    }
+
+    private static boolean isLive(Map<String, Long> misses, String word, long now) {
+        Long expiry = misses.get(word);
+        if (expiry == null)
+            return false;
+        if (expiry >= now)
+            return true;
+        misses.remove(word);
+        return false;
+    }
+
+    private LinkedHashMap<String, Long> misses(String strategy, String database) {
+        String key = key(strategy, database);
+        LinkedHashMap<String, Long> misses = missesByKey.get(key);
+        if (misses == null) {
+            misses = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+            missesByKey.put(key, misses);
+        }
+        return misses;
+    }
+
+    private static String key(String strategy, String database) {
+        return strategy + " " + database;
+    }
+
+    private static String normalize(String word) {
+        return word.trim().toLowerCase(Locale.ROOT);
+    }
+}
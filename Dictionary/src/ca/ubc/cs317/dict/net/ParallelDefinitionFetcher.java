@@ -0,0 +1,131 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Splits a lookup in all databases ('*') into one DEFINE request per database, issued concurrently (with INTERACTIVE
+ * priority) over the connections of a pool. Results are handed to a listener as soon as each database replies, so the
+ * first definitions can be shown as soon as the fastest database answers instead of waiting for the slowest one.
+ */
+public class ParallelDefinitionFetcher {
+
+    /** Receives the definitions found in each database, in the order in which the databases reply, and the databases
+     * that failed. */
+    public interface Listener {
+        /**
+         * @param catalogIndex Position of the database in the catalog passed to fetch, which can be used to keep
+         *                     results in catalog order regardless of the order in which they arrive.
+         * @param database     The database that replied.
+         * @param definitions  Definitions found in that database (never empty).
+         */
+        void definitionsReceived(int catalogIndex, Database database, Collection<Definition> definitions);
+
+        /** Called for each database whose definitions could not be retrieved, when some other database did reply.
+         *
+         * @param catalogIndex Position of the database in the catalog passed to fetch.
+         * @param database     The database that failed.
+         * @param cause        Why the request failed, e.g., a timeout or a busy server.
+         */
+        void databaseFailed(int catalogIndex, Database database, DictConnectionException cause);
+    }
+
+    private final RequestScheduler scheduler;
+    private final ExecutorService executor;
+
+    public ParallelDefinitionFetcher(RequestScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.executor = Executors.newFixedThreadPool(scheduler.getPool().getMaxConnections(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "define-fetcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Retrieves all definitions for a word in every database of the catalog, one concurrent request per database.
+     * This method blocks until every database has replied, but the listener is called (in the calling thread) as
+     * soon as each individual database replies.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param catalog  The regular databases to be queried, in the order they should be presented.
+     * @param listener Receives the definitions of each database that has at least one definition for the word, and
+     *                 the databases that could not be queried (once all databases have replied).
+     * @throws DictConnectionException If no database could be queried successfully, or the thread is interrupted.
+     */
+    public void fetch(final String word, List<Database> catalog, Listener listener) throws DictConnectionException {
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Integer>> futures = new ArrayList<>();
+        final Map<Integer, Collection<Definition>> results = new ConcurrentHashMap<>();
+        final Map<Integer, DictConnectionException> failures = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < catalog.size(); i++) {
+            final int catalogIndex = i;
+            final Database database = catalog.get(i);
+            futures.add(completionService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws DictConnectionException {
+                    try {
+                        results.put(catalogIndex, define(word, database));
+                    } catch (DictConnectionException e) {
+                        failures.put(catalogIndex, e);
+                        throw e;
+                    }
+                    return catalogIndex;
+                }
+            }));
+        }
+
+        DictConnectionException failure = null;
+        boolean anySucceeded = false;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    int catalogIndex = completionService.take().get();
+                    anySucceeded = true;
+                    Collection<Definition> definitions = results.remove(catalogIndex);
+                    if (!definitions.isEmpty())
+                        listener.definitionsReceived(catalogIndex, catalog.get(catalogIndex), definitions);
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause() instanceof DictConnectionException ?
+                                (DictConnectionException) e.getCause() :
+                                new DictConnectionException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<Integer> future : futures)
+                future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DictConnectionException("Interrupted while retrieving definitions", e);
+        }
+        if (!anySucceeded && failure != null)
+            throw failure;
+        for (Map.Entry<Integer, DictConnectionException> entry : new TreeMap<>(failures).entrySet())
+            listener.databaseFailed(entry.getKey(), catalog.get(entry.getKey()), entry.getValue());
+    }
+
+    private Collection<Definition> define(final String word, final Database database)
+            throws DictConnectionException {
+        return scheduler.execute(RequestScheduler.Priority.INTERACTIVE,
+                new RequestScheduler.Request<Collection<Definition>>() {
+                    @Override
+                    public Collection<Definition> execute(DictionaryConnection connection)
+                            throws DictConnectionException {
+                        return connection.getDefinitions(word, database);
+                    }
+                });
+    }
+
+    /** Stops the worker threads and closes the underlying scheduler and pool. */
+    public void shutdown() {
+        executor.shutdownNow();
+        scheduler.close();
+    }
+}
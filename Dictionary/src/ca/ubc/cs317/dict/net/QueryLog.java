@@ -0,0 +1,171 @@
+package ca.ubc.cs317.dict.net;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * An aggregated log of the queries issued by the user, counting how often each word (DEFINE) and each pattern (MATCH)
+ * was looked up. The log is kept in memory and saved to a file between sessions, so the most popular queries can be
+ * used to warm the caches at startup.
+ *
+ * The log holds a bounded number of distinct queries. When it is full, every count is halved and queries that drop
+ * to zero are forgotten, so old habits fade while the ranking of popular queries is preserved.
+ */
+public class QueryLog {
+
+    public static final int DEFAULT_MAX_ENTRIES = 5000;
+
+    /** A query as it would be sent to the server. The strategy is NegativeCache.DEFINE for DEFINE commands. */
+    public static class Query {
+        private final String strategy;
+        private final String database;
+        private final String word;
+
+        public Query(String strategy, String database, String word) {
+            this.strategy = strategy;
+            this.database = database;
+            this.word = word;
+        }
+
+        public String getStrategy() {
+            return strategy;
+        }
+
+        public String getDatabase() {
+            return database;
+        }
+
+        public String getWord() {
+            return word;
+        }
+
+        public boolean isDefine() {
+            return strategy.equals(NegativeCache.DEFINE);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Query query = (Query) o;
+            return strategy.equals(query.strategy) && database.equals(query.database) && word.equals(query.word);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * strategy.hashCode() + database.hashCode()) + word.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return strategy + " " + database + " \"" + word + "\"";
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<Query, Integer> counts = new HashMap<>();
+
+    public QueryLog() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public QueryLog(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public synchronized void recordDefine(String database, String word) {
+        record(new Query(NegativeCache.DEFINE, database, word.trim()), 1);
+    }
+
+    public synchronized void recordMatch(String strategy, String database, String word) {
+        record(new Query(strategy, database, word.trim()), 1);
+    }
+
+    private void record(Query query, int count) {
+        if (query.getWord().isEmpty())
+            return;
+        Integer current = counts.get(query);
+        counts.put(query, current == null ? count : current + count);
+        if (counts.size() > maxEntries)
+            age();
+    }
+
+    private void age() {
+        for (Iterator<Map.Entry<Query, Integer>> it = counts.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Query, Integer> entry = it.next();
+            if (entry.getValue() / 2 == 0)
+                it.remove();
+            else
+                entry.setValue(entry.getValue() / 2);
+        }
+    }
+
+    /** Returns the most frequent queries, most frequent first.
+     *
+     * @param limit Maximum number of queries to return.
+     */
+    public synchronized List<Query> topQueries(int limit) {
+        List<Map.Entry<Query, Integer>> entries = new ArrayList<>(counts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Query, Integer>>() {
+            @Override
+            public int compare(Map.Entry<Query, Integer> a, Map.Entry<Query, Integer> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        List<Query> top = new ArrayList<>();
+        for (int i = 0; i < entries.size() && i < limit; i++)
+            top.add(entries.get(i).getKey());
+        return top;
+    }
+
+    /** Adds the counts stored in a file to this log. A missing file is treated as an empty log.
+     *
+     * @throws IOException If the file exists but can't be read.
+     */
+    public synchronized void load(Path file) throws IOException {
+        if (!Files.exists(file))
+            return;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // count TAB strategy TAB database TAB word
+                String[] fields = line.split("\t", 4);
+                if (fields.length < 4)
+                    continue;
+                try {
+                    record(new Query(fields[1], fields[2], fields[3]), Integer.parseInt(fields[0]));
+                } catch (NumberFormatException e) {
+                    // Skip corrupted lines, the log is only a hint
+                }
+            }
+        }
+    }
+
+    /** Writes the log to a file, replacing its previous contents.
+     *
+     * @throws IOException If the file can't be written.
+     */
+    public synchronized void save(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<Query, Integer> entry : counts.entrySet()) {
+                Query query = entry.getKey();
+                if (query.getWord().contains("\t") || query.getWord().contains("\n"))
+                    continue;
+                writer.write(entry.getValue() + "\t" + query.getStrategy() + "\t" + query.getDatabase() + "\t" +
+                        query.getWord());
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,344 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.exception.DictConnectionLostException;
+import ca.ubc.cs317.dict.exception.DictRejectedException;
+import ca.ubc.cs317.dict.exception.DictServerBusyException;
+import ca.ubc.cs317.dict.exception.DictTimeoutException;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decides which caller gets the next connection of a pool when more requests are waiting than may be in flight. The
+ * number of requests in flight is limited by an AdaptiveConcurrencyLimiter, which finds how many the server can take
+ * without slowing down or refusing work, up to the size of the pool.
+ * Every request has a priority, and a free connection goes to the waiting request with the highest priority, so a
+ * user's search never waits behind prefetching, warm-up or batch jobs that happen to have asked first:
+ * <ul>
+ *     <li>Requests of the same priority are served in the order they arrived.</li>
+ *     <li>A request's priority rises by one level for every AGING_MILLIS it has been waiting, so a steady stream of
+ *     interactive requests can delay background work but never starve it.</li>
+ *     <li>Background requests (PREFETCH and BULK) never hold the last RESERVED_CONNECTIONS slots of the limit, so an
+ *     interactive request only has to wait for another interactive request, not for a slow background one. When the
+ *     limit leaves no other slot, a background request only runs once it has aged to the INTERACTIVE level.</li>
+ *     <li>A request the server refuses with a transient (4xx) reply is queued again, up to MAX_BUSY_RETRIES times,
+ *     after waiting BUSY_RETRY_MILLIS (doubled on every retry) and with fewer requests allowed in flight.</li>
+ *     <li>A request that fails because a connection left idle in the pool was closed by the server, before any reply,
+ *     is run again on a new connection.</li>
+ *     <li>Background requests are refused with DictRejectedException while MAX_QUEUED_BACKGROUND of them are
+ *     already waiting, instead of piling up behind the interactive traffic.</li>
+ * </ul>
+ * The request itself runs in the calling thread, with a connection borrowed from the pool for its exclusive use.
+ */
+public class RequestScheduler {
+
+    /** Request priorities, from most to least urgent. */
+    public enum Priority {
+        /** Definitions the user is waiting for. */
+        INTERACTIVE,
+        /** Suggestions shown while the user types. */
+        AUTOCOMPLETE,
+        /** Results the user may ask for soon, such as cache warm-up. */
+        PREFETCH,
+        /** Batch jobs nobody is waiting for. */
+        BULK;
+
+        boolean isBackground() {
+            return this == PREFETCH || this == BULK;
+        }
+    }
+
+    /** Work to be done with a connection. */
+    public interface Request<T> {
+        /**
+         * @param connection A connection for the exclusive use of the request, until this method returns.
+         */
+        T execute(DictionaryConnection connection) throws DictConnectionException;
+    }
+
+    public static final long AGING_MILLIS = 2000;
+    public static final int RESERVED_CONNECTIONS = 1;
+    public static final int MAX_QUEUED_BACKGROUND = 32;
+    public static final int MAX_BUSY_RETRIES = 3;
+    public static final long BUSY_RETRY_MILLIS = 100;
+
+    private final DictionaryConnectionPool pool;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Map<Priority, ArrayDeque<Ticket>> queues = new EnumMap<>(Priority.class);
+    private int running = 0;
+    private int runningBackground = 0;
+    private int queuedBackground = 0;
+    private long rejected = 0;
+    private long nextSequence = 0;
+    private final Map<Priority, Long> completed = new EnumMap<>(Priority.class);
+    private boolean closed = false;
+
+    /**
+     * @param pool Pool the connections are borrowed from. Other users of the pool compete for its connections without
+     *             going through the scheduler, so all requests should be made through the same scheduler.
+     */
+    public RequestScheduler(DictionaryConnectionPool pool) {
+        this.pool = pool;
+        this.limiter = new AdaptiveConcurrencyLimiter(pool.getMaxConnections());
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<Ticket>());
+            completed.put(priority, 0L);
+        }
+    }
+
+    public DictionaryConnectionPool getPool() {
+        return pool;
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /** Runs a request once a connection is available for it, waiting for as long as it takes.
+     *
+     * @see #execute(Priority, Deadline, Request)
+     */
+    public <T> T execute(Priority priority, Request<T> request) throws DictConnectionException {
+        return execute(priority, Deadline.NONE, request);
+    }
+
+    /** Runs a request in the calling thread once a connection is available for it. The connection is returned to the
+     * pool when the request completes, or discarded if the request fails. The request may be run again (on another
+     * connection) if the server replies that it is busy.
+     *
+     * @param priority Priority of the request.
+     * @param deadline Time by which the request must have been given a connection. The request itself should apply
+     *                 the same deadline to the connection's methods.
+     * @param request  The work to be done with the connection.
+     * @return The result of the request.
+     * @throws DictRejectedException If the request is a background request and too many are already waiting.
+     * @throws DictServerBusyException If the server is still busy after MAX_BUSY_RETRIES retries.
+     * @throws DictTimeoutException If the deadline expires before a connection is available.
+     * @throws DictConnectionException If the request fails, the scheduler is closed, or the thread is interrupted.
+     */
+    public <T> T execute(Priority priority, Deadline deadline, Request<T> request) throws DictConnectionException {
+        for (int attempt = 0; ; attempt++) {
+            Ticket ticket = enqueue(priority);
+            awaitTurn(ticket, deadline);
+            try {
+                return run(request);
+            } catch (DictServerBusyException e) {
+                limiter.onCongestion();
+                if (attempt >= MAX_BUSY_RETRIES)
+                    throw e;
+            } finally {
+                finish(ticket);
+                closeExcessConnections();
+            }
+            // Give the server time to notice the connections we closed before asking again
+            long delay = BUSY_RETRY_MILLIS << attempt;
+            if (deadline.remainingMillis() <= delay)
+                throw new DictTimeoutException("The server is busy, and the deadline doesn't allow another attempt");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DictConnectionException("Interrupted while waiting for the server", e);
+            }
+        }
+    }
+
+    private <T> T run(Request<T> request) throws DictConnectionException {
+        DictionaryConnection connection = pool.acquire();
+        while (true) {
+            long commandsBefore = connection.getCommandsSent();
+            long linesBefore = connection.getLinesRead();
+            long start = System.nanoTime();
+            try {
+                T result = request.execute(connection);
+                // Requests answered from a cache say nothing about the server
+                long commands = connection.getCommandsSent() - commandsBefore;
+                if (commands > 0)
+                    limiter.onSample((System.nanoTime() - start) / commands, isSaturated());
+                pool.release(connection);
+                return result;
+            } catch (DictTimeoutException e) {
+                limiter.onCongestion();
+                pool.discard(connection);
+                throw e;
+            } catch (DictConnectionLostException e) {
+                pool.discard(connection);
+                // Servers close connections that stay idle too long; that says nothing about the request, which has
+                // not been answered at all, so it is run again once on a new connection
+                if (!connection.isReused() || connection.getLinesRead() != linesBefore)
+                    throw e;
+                connection = pool.acquireNew();
+            } catch (DictConnectionException | RuntimeException e) {
+                pool.discard(connection);
+                throw e;
+            }
+        }
+    }
+
+    /** Checks whether requests are being held back by the limit. */
+    private synchronized boolean isSaturated() {
+        if (running >= limiter.getLimit())
+            return true;
+        for (ArrayDeque<Ticket> queue : queues.values())
+            if (!queue.isEmpty())
+                return true;
+        return false;
+    }
+
+    /** Closes idle connections the current limit doesn't allow to be used, so a server that limits connections per
+     * client doesn't count them against us.
+     */
+    private void closeExcessConnections() {
+        int allowed;
+        synchronized (this) {
+            allowed = limiter.getLimit() - running;
+        }
+        pool.closeIdleConnections(Math.max(0, allowed));
+    }
+
+    private synchronized Ticket enqueue(Priority priority) throws DictConnectionException {
+        if (closed)
+            throw new DictConnectionException("Request scheduler is closed");
+        if (priority.isBackground()) {
+            if (queuedBackground >= MAX_QUEUED_BACKGROUND) {
+                rejected++;
+                throw new DictRejectedException("Too many background requests waiting for a connection");
+            }
+            queuedBackground++;
+        }
+        Ticket ticket = new Ticket(priority, nextSequence++);
+        queues.get(priority).addLast(ticket);
+        dispatch();
+        return ticket;
+    }
+
+    private synchronized void awaitTurn(Ticket ticket, Deadline deadline) throws DictConnectionException {
+        try {
+            while (!ticket.granted) {
+                if (closed)
+                    throw new DictConnectionException("Request scheduler is closed");
+                if (deadline.isExpired())
+                    throw new DictTimeoutException("No connection available before the deadline");
+                long timeout = deadline.isBounded() ? Math.max(1, deadline.remainingMillis()) : 0;
+                if (ticket.priority.isBackground()) {
+                    // Aging alone may let a background request past the reserved slots, and nothing else would wake
+                    // it up when it does
+                    long untilAged = ticket.millisToNextRank(System.nanoTime());
+                    timeout = timeout == 0 ? untilAged : Math.min(timeout, untilAged);
+                }
+                wait(timeout);
+                if (!ticket.granted && ticket.priority.isBackground())
+                    dispatch();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(ticket);
+            throw new DictConnectionException("Interrupted while waiting for a connection", e);
+        } catch (DictConnectionException e) {
+            abandon(ticket);
+            throw e;
+        }
+    }
+
+    /** Removes a ticket that will not run, giving back its connection if it had already been granted one. */
+    private void abandon(Ticket ticket) {
+        if (ticket.granted) {
+            finish(ticket);
+            return;
+        }
+        queues.get(ticket.priority).remove(ticket);
+        if (ticket.priority.isBackground())
+            queuedBackground--;
+    }
+
+    private synchronized void finish(Ticket ticket) {
+        running--;
+        if (ticket.priority.isBackground())
+            runningBackground--;
+        completed.put(ticket.priority, completed.get(ticket.priority) + 1);
+        dispatch();
+    }
+
+    /** Grants connections to the best waiting requests, as long as the limit allows more requests in flight. */
+    private void dispatch() {
+        long now = System.nanoTime();
+        int limit = limiter.getLimit();
+        int backgroundLimit = Math.max(0, limit - RESERVED_CONNECTIONS);
+        while (running < limit) {
+            Ticket best = null;
+            long bestRank = 0;
+            for (ArrayDeque<Ticket> queue : queues.values()) {
+                // Within a queue, the first ticket has waited longest and so has the best rank
+                Ticket ticket = queue.peekFirst();
+                if (ticket == null)
+                    continue;
+                long rank = ticket.rank(now);
+                // Past the background limit, only a request that has waited long enough to count as interactive runs
+                if (ticket.priority.isBackground() && runningBackground >= backgroundLimit
+                        && rank > Priority.INTERACTIVE.ordinal())
+                    continue;
+                if (best == null || rank < bestRank || (rank == bestRank && ticket.sequence < best.sequence)) {
+                    best = ticket;
+                    bestRank = rank;
+                }
+            }
+            if (best == null)
+                break;
+            queues.get(best.priority).removeFirst();
+            best.granted = true;
+            running++;
+            if (best.priority.isBackground()) {
+                queuedBackground--;
+                runningBackground++;
+            }
+        }
+        notifyAll();
+    }
+
+    /** Returns the number of requests of a priority that are waiting for a connection. */
+    public synchronized int getQueueLength(Priority priority) {
+        return queues.get(priority).size();
+    }
+
+    /** Returns the number of requests of a priority that have run, successfully or not. */
+    public synchronized long getCompletedCount(Priority priority) {
+        return completed.get(priority);
+    }
+
+    /** Returns the number of background requests refused so far. */
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    /** Fails every waiting request and closes the pool. Requests that are already running are allowed to complete.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+        pool.close();
+    }
+
+    private static class Ticket {
+        final Priority priority;
+        final long sequence;
+        final long enqueuedNanos = System.nanoTime();
+        boolean granted = false;
+
+        Ticket(Priority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /** The ticket's priority level, improved by one for every AGING_MILLIS spent waiting. Lower is better. */
+        long rank(long now) {
+            return priority.ordinal() - (now - enqueuedNanos) / (AGING_MILLIS * 1000000L);
+        }
+
+        /** The time until the ticket's rank next improves, in millis. */
+        long millisToNextRank(long now) {
+            return AGING_MILLIS - ((now - enqueuedNanos) / 1000000L) % AGING_MILLIS;
+        }
+    }
+}
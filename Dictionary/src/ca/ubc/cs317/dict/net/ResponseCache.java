@@ -0,0 +1,95 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.*;
+
+/**
+ * Keeps recent MATCH and DEFINE results, so repeated queries can be answered without a round trip to the server.
+ * Entries expire after a fixed time to live, and the least recently used entries are evicted once the cache is full.
+ * Only non-empty results are kept here; queries without a match are remembered by the NegativeCache.
+ */
+public class ResponseCache {
+
+    public static final long DEFAULT_TTL_MILLIS = 30 * 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 2000;
+
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry<Set<String>>> matches;
+    private final LinkedHashMap<String, Entry<Collection<Definition>>> definitions;
+
+    public ResponseCache() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param ttlMillis  How long a result is reused after it was received.
+     * @param maxEntries Maximum number of MATCH results, and separately of DEFINE results, kept in the cache.
+     */
+    public ResponseCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.matches = lruMap(maxEntries);
+        this.definitions = lruMap(maxEntries);
+    }
+
+    /** Returns the cached result of a MATCH command, or null if it is not in the cache. */
+    public synchronized Set<String> getMatches(String strategy, String database, String word) {
+        Set<String> cached = get(matches, key(strategy, database, word));
+        return cached == null ? null : new LinkedHashSet<>(cached);
+    }
+
+    public synchronized void putMatches(String strategy, String database, String word, Set<String> result) {
+        if (!result.isEmpty())
+            matches.put(key(strategy, database, word), new Entry<Set<String>>(new LinkedHashSet<>(result)));
+    }
+
+    /** Returns the cached result of a DEFINE command, or null if it is not in the cache. */
+    public synchronized Collection<Definition> getDefinitions(String database, String word) {
+        Collection<Definition> cached = get(definitions, key(NegativeCache.DEFINE, database, word));
+        return cached == null ? null : new ArrayList<>(cached);
+    }
+
+    public synchronized void putDefinitions(String database, String word, Collection<Definition> result) {
+        if (!result.isEmpty())
+            definitions.put(key(NegativeCache.DEFINE, database, word),
+                    new Entry<Collection<Definition>>(new ArrayList<>(result)));
+    }
+
+    public synchronized void clear() {
+        matches.clear();
+        definitions.clear();
+    }
+
+    private <T> T get(Map<String, Entry<T>> map, String key) {
+        Entry<T> entry = map.get(key);
+        if (entry == null)
+            return null;
+        if (entry.expiry < System.currentTimeMillis()) {
+            map.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private static String key(String strategy, String database, String word) {
+        return strategy + " " + database + " " + word.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static <T> LinkedHashMap<String, T> lruMap(final int maxEntries) {
+        return new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private class Entry<T> {
+        private final T value;
+        private final long expiry = System.currentTimeMillis() + ttlMillis;
+
+        Entry(T value) {
+            this.value = value;
+        }
+    }
+}
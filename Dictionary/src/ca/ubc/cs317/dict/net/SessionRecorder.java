@@ -0,0 +1,264 @@
+package ca.ubc.cs317.dict.net;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the bytes exchanged with DICT servers, as they were written to and read from the sockets, with the time at
+ * which each chunk went through. Recording is cheap enough to leave on: each chunk is copied into a fixed-size ring
+ * buffer, behind a header of a few bytes, and the oldest chunks are overwritten once the buffer is full, so the
+ * recorder always holds the most recent exchanges. The buffer can be saved to a file and replayed later with
+ * SessionReplay, which feeds the same bytes to the client at the same (or maximum) speed.
+ *
+ * Several connections may share a recorder; each one is recorded as its own session. Every chunk is stored as:
+ * <pre>
+ *     varint  session number * 2 + direction (0 = sent, 1 = received)
+ *     varint  microseconds since the previous chunk
+ *     varint  length
+ *     bytes   data
+ * </pre>
+ * A saved recording is the magic string DICTREC1 followed by the chunks, oldest first.
+ */
+public class SessionRecorder {
+
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+    public static final int SENT = 0;
+    public static final int RECEIVED = 1;
+
+    private static final byte[] MAGIC = "DICTREC1".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_HEADER_LENGTH = 3 * 5;
+
+    /** A chunk of data sent or received in a session. */
+    public static class Chunk {
+        private final int session;
+        private final int direction;
+        private final long offsetNanos;
+        private final byte[] data;
+
+        Chunk(int session, int direction, long offsetNanos, byte[] data) {
+            this.session = session;
+            this.direction = direction;
+            this.offsetNanos = offsetNanos;
+            this.data = data;
+        }
+
+        public int getSession() {
+            return session;
+        }
+
+        /** SENT or RECEIVED. */
+        public int getDirection() {
+            return direction;
+        }
+
+        /** Time of the chunk, relative to the first chunk of the recording. */
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private final byte[] buffer;
+    private final int maxChunkLength;
+    private int head = 0;   // Position of the oldest chunk
+    private int size = 0;
+    private long lastNanos = System.nanoTime();
+    private int nextSession = 0;
+    private long droppedChunks = 0;
+
+    public SessionRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Size of the ring buffer, in bytes.
+     */
+    public SessionRecorder(int capacity) {
+        if (capacity < 1024)
+            throw new IllegalArgumentException("A recorder needs at least 1 KB");
+        this.buffer = new byte[capacity];
+        this.maxChunkLength = capacity / 4;
+    }
+
+    /** Starts a new session, whose streams are then wrapped with recordInput and recordOutput.
+     *
+     * @return The number identifying the session in the recording.
+     */
+    public synchronized int startSession() {
+        return nextSession++;
+    }
+
+    /** Wraps the input stream of a session, so every byte read from it is recorded. */
+    public InputStream recordInput(final int session, InputStream input) {
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0)
+                    record(session, RECEIVED, new byte[]{(byte) b}, 0, 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0)
+                    record(session, RECEIVED, b, off, count);
+                return count;
+            }
+        };
+    }
+
+    /** Wraps the output stream of a session, so every byte written to it is recorded. */
+    public OutputStream recordOutput(final int session, OutputStream output) {
+        return new FilterOutputStream(output) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                record(session, SENT, new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                record(session, SENT, b, off, len);
+            }
+        };
+    }
+
+    /** Appends a chunk to the recording, overwriting the oldest chunks if there is not enough room. Chunks longer
+     * than a quarter of the buffer are split.
+     */
+    public synchronized void record(int session, int direction, byte[] data, int offset, int length) {
+        for (int start = offset; start < offset + length; start += maxChunkLength) {
+            int chunkLength = Math.min(maxChunkLength, offset + length - start);
+            long now = System.nanoTime();
+            long deltaMicros = Math.max(0, (now - lastNanos) / 1000);
+            lastNanos = now;
+            while (buffer.length - size < MAX_HEADER_LENGTH + chunkLength)
+                dropOldest();
+            int end = (head + size) % buffer.length;
+            int position = putVarint(end, ((long) session << 1) | direction);
+            position = putVarint(position, deltaMicros);
+            position = putVarint(position, chunkLength);
+            int first = Math.min(chunkLength, buffer.length - position);
+            System.arraycopy(data, start, buffer, position, first);
+            System.arraycopy(data, start + first, buffer, 0, chunkLength - first);
+            position = (position + chunkLength) % buffer.length;
+            size += (position - end + buffer.length) % buffer.length;
+        }
+    }
+
+    private void dropOldest() {
+        int[] position = {head};
+        getVarint(position);
+        getVarint(position);
+        long length = getVarint(position);
+        int end = (int) ((position[0] + length) % buffer.length);
+        size -= (end - head + buffer.length) % buffer.length;
+        head = end;
+        droppedChunks++;
+    }
+
+    private int putVarint(int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position] = (byte) ((value & 0x7F) | 0x80);
+            position = (position + 1) % buffer.length;
+            value >>>= 7;
+        }
+        buffer[position] = (byte) value;
+        return (position + 1) % buffer.length;
+    }
+
+    private long getVarint(int[] position) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer[position[0]];
+            position[0] = (position[0] + 1) % buffer.length;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+    /** Returns the number of bytes of the buffer in use. */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /** Returns the number of chunks overwritten since the recorder was created. */
+    public synchronized long getDroppedChunks() {
+        return droppedChunks;
+    }
+
+    /** Writes the recording to a stream, oldest chunk first. The recording is kept, and goes on. */
+    public void writeTo(OutputStream output) throws IOException {
+        byte[] copy;
+        synchronized (this) {
+            copy = new byte[size];
+            int first = Math.min(size, buffer.length - head);
+            System.arraycopy(buffer, head, copy, 0, first);
+            System.arraycopy(buffer, 0, copy, first, size - first);
+        }
+        output.write(MAGIC);
+        output.write(copy);
+    }
+
+    /** Saves the recording to a file, replacing it if it exists. */
+    public void save(Path file) throws IOException {
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file))) {
+            writeTo(output);
+        }
+    }
+
+    /** Reads a recording saved with save or writeTo.
+     *
+     * @return The chunks of every session, oldest first.
+     * @throws IOException If the file can't be read or is not a recording.
+     */
+    public static List<Chunk> load(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < MAGIC.length || !Arrays.equals(Arrays.copyOf(data, MAGIC.length), MAGIC))
+            throw new IOException(file + " is not a session recording");
+        List<Chunk> chunks = new ArrayList<>();
+        int[] position = {MAGIC.length};
+        long offsetNanos = 0;
+        while (position[0] < data.length) {
+            long tag = readVarint(data, position);
+            long deltaMicros = readVarint(data, position);
+            int length = (int) readVarint(data, position);
+            if (length < 0 || position[0] + length > data.length)
+                throw new IOException("Truncated session recording: " + file);
+            // The first chunk's delta refers to a chunk that was overwritten, so the recording starts at zero
+            if (!chunks.isEmpty())
+                offsetNanos += deltaMicros * 1000;
+            chunks.add(new Chunk((int) (tag >>> 1), (int) (tag & 1), offsetNanos,
+                    Arrays.copyOfRange(data, position[0], position[0] + length)));
+            position[0] += length;
+        }
+        return chunks;
+    }
+
+    private static long readVarint(byte[] data, int[] position) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= data.length)
+                throw new IOException("Truncated session recording");
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Invalid number in session recording");
+    }
+}
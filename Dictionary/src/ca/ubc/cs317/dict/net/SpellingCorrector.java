@@ -0,0 +1,243 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.util.StringDistance;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Looks up a word and, if it has no definition, suggests corrections ("did you mean") found with the server's lev
+ * and soundex MATCH strategies, together with the definitions of the best correction. A typo then costs one lookup
+ * instead of a lookup, a retyped word and a second lookup.
+ *
+ * In speculative mode the MATCH requests are sent at the same time as the DEFINE, on other connections of the pool,
+ * so a miss costs about two round trips (DEFINE or MATCH, then DEFINE of the correction) instead of three. Their
+ * results are thrown away when the word does have definitions.
+ */
+public class SpellingCorrector {
+
+    public static final int MAX_CANDIDATES = 8;
+
+    private static final List<String> STRATEGY_NAMES = Arrays.asList("lev", "soundex");
+
+    /** The outcome of a lookup. */
+    public static class Result {
+        private final String word;
+        private final Collection<Definition> definitions;
+        private final List<String> candidates;
+
+        Result(String word, Collection<Definition> definitions, List<String> candidates) {
+            this.word = word;
+            this.definitions = definitions;
+            this.candidates = candidates;
+        }
+
+        /** The word that was looked up. */
+        public String getWord() {
+            return word;
+        }
+
+        /** Definitions of the word or, if it has none, of its best correction. */
+        public Collection<Definition> getDefinitions() {
+            return definitions;
+        }
+
+        /** Suggested corrections, best first; empty if the word itself has definitions. */
+        public List<String> getCandidates() {
+            return candidates;
+        }
+
+        /** The correction whose definitions were retrieved, or null if the word has definitions or no correction was
+         * found. */
+        public String getCorrection() {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+    }
+
+    private final RequestScheduler scheduler;
+    private final List<MatchingStrategy> strategies = new ArrayList<>();
+    private final ExecutorService executor;
+    private volatile boolean speculative = false;
+
+    /**
+     * @param scheduler Scheduler through which every request is made, with INTERACTIVE priority.
+     * @param serverStrategies Strategies supported by the server. Only lev and soundex are used, if present.
+     */
+    public SpellingCorrector(RequestScheduler scheduler, Collection<MatchingStrategy> serverStrategies) {
+        this.scheduler = scheduler;
+        for (MatchingStrategy strategy : serverStrategies)
+            if (STRATEGY_NAMES.contains(strategy.getName()))
+                strategies.add(strategy);
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "spelling-corrector");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Checks whether the server supports at least one of the strategies used to find corrections. */
+    public boolean isAvailable() {
+        return !strategies.isEmpty();
+    }
+
+    /** Sets whether corrections are requested in parallel with every DEFINE, rather than only after a miss. */
+    public void setSpeculative(boolean speculative) {
+        this.speculative = speculative;
+    }
+
+    /** Retrieves the definitions of a word or, if it has none, correction candidates and the definitions of the best
+     * one.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param database The database to be used, including the special databases '*' and '!'.
+     * @throws DictConnectionException If the word's definitions can't be retrieved. Failures while looking for
+     * corrections only mean fewer (or no) corrections.
+     */
+    public Result lookup(final String word, final Database database) throws DictConnectionException {
+        Future<Collection<Definition>> define = executor.submit(new Callable<Collection<Definition>>() {
+            @Override
+            public Collection<Definition> call() throws DictConnectionException {
+                return define(word, database);
+            }
+        });
+        List<Future<Set<String>>> matches = speculative ? requestMatches(word, database) : null;
+
+        Collection<Definition> definitions = get(define);
+        if (!definitions.isEmpty() || !isAvailable()) {
+            if (matches != null)
+                for (Future<Set<String>> future : matches)
+                    future.cancel(false); // Not worth interrupting: results go to the shared caches anyway
+            return new Result(word, definitions, Collections.<String>emptyList());
+        }
+        return correct(word, database, matches == null ? requestMatches(word, database) : matches);
+    }
+
+    /** Suggests corrections for a word already known to have no definitions in a database, e.g., after a lookup in
+     * each database on its own, and retrieves the definitions of the best one. Unlike lookup, the word itself is not
+     * defined again: only the MATCH requests and the DEFINE of the best correction are sent.
+     *
+     * @param word     The word that has no definitions.
+     * @param database The database to be used, including the special databases '*' and '!'.
+     * @throws DictConnectionException If the definitions of the best correction can't be retrieved.
+     */
+    public Result suggest(String word, Database database) throws DictConnectionException {
+        if (!isAvailable())
+            return new Result(word, Collections.<Definition>emptyList(), Collections.<String>emptyList());
+        return correct(word, database, requestMatches(word, database));
+    }
+
+    /** Ranks the results of the MATCH requests for a word without definitions, and defines the best candidate. */
+    private Result correct(String word, Database database, List<Future<Set<String>>> matches)
+            throws DictConnectionException {
+        Set<String> found = new LinkedHashSet<>();
+        for (Future<Set<String>> future : matches) {
+            try {
+                found.addAll(get(future));
+            } catch (DictConnectionException e) {
+                System.out.println("Could not look for corrections: " + e.getMessage());
+            }
+        }
+        List<String> candidates = rank(word, found);
+        if (candidates.isEmpty())
+            return new Result(word, Collections.<Definition>emptyList(), candidates);
+        return new Result(word, define(candidates.get(0), database), candidates);
+    }
+
+    private List<Future<Set<String>>> requestMatches(final String word, final Database database) {
+        List<Future<Set<String>>> futures = new ArrayList<>();
+        for (final MatchingStrategy strategy : strategies) {
+            futures.add(executor.submit(new Callable<Set<String>>() {
+                @Override
+                public Set<String> call() throws DictConnectionException {
+                    return scheduler.execute(RequestScheduler.Priority.INTERACTIVE,
+                            new RequestScheduler.Request<Set<String>>() {
+                                @Override
+                                public Set<String> execute(DictionaryConnection connection)
+                                        throws DictConnectionException {
+                                    return connection.getMatchList(word, strategy, database);
+                                }
+                            });
+                }
+            }));
+        }
+        return futures;
+    }
+
+    private Collection<Definition> define(final String word, final Database database)
+            throws DictConnectionException {
+        return scheduler.execute(RequestScheduler.Priority.INTERACTIVE,
+                new RequestScheduler.Request<Collection<Definition>>() {
+                    @Override
+                    public Collection<Definition> execute(DictionaryConnection connection)
+                            throws DictConnectionException {
+                        return connection.getDefinitions(word, database);
+                    }
+                });
+    }
+
+    private static <T> T get(Future<T> future) throws DictConnectionException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof DictConnectionException ? (DictConnectionException) e.getCause() :
+                    new DictConnectionException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DictConnectionException("Interrupted while retrieving definitions", e);
+        }
+    }
+
+    /** Orders correction candidates for a word: smallest edit distance first, then words that sound the same, then
+     * words with the same first letter, then alphabetically. Candidates equal to the word (ignoring case) and
+     * duplicates that differ only in case are removed.
+     *
+     * @return At most MAX_CANDIDATES candidates, best first.
+     */
+    public static List<String> rank(String word, Collection<String> candidates) {
+        final String key = word.toLowerCase(Locale.ROOT);
+        final String soundex = StringDistance.soundex(key);
+        Map<String, String> distinct = new LinkedHashMap<>();
+        for (String candidate : candidates) {
+            String candidateKey = candidate.toLowerCase(Locale.ROOT);
+            if (!candidateKey.equals(key) && !distinct.containsKey(candidateKey))
+                distinct.put(candidateKey, candidate);
+        }
+        final Map<String, Integer> distances = new HashMap<>();
+        for (String candidateKey : distinct.keySet())
+            distances.put(candidateKey, StringDistance.levenshtein(key, candidateKey));
+        List<String> keys = new ArrayList<>(distinct.keySet());
+        Collections.sort(keys, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int result = Integer.compare(distances.get(a), distances.get(b));
+                if (result == 0)
+                    result = Boolean.compare(!StringDistance.soundex(a).equals(soundex),
+                            !StringDistance.soundex(b).equals(soundex));
+                if (result == 0)
+                    result = Boolean.compare(!sameFirstLetter(a, key), !sameFirstLetter(b, key));
+                return result != 0 ? result : a.compareTo(b);
+            }
+        });
+        List<String> ranked = new ArrayList<>();
+        for (String candidateKey : keys.subList(0, Math.min(MAX_CANDIDATES, keys.size())))
+            ranked.add(distinct.get(candidateKey));
+        return ranked;
+    }
+
+    private static boolean sameFirstLetter(String a, String b) {
+        return !a.isEmpty() && !b.isEmpty() && a.charAt(0) == b.charAt(0);
+    }
+
+    /** Stops the worker threads. The scheduler is left open, since it is shared. */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
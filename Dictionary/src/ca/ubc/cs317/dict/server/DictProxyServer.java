@@ -0,0 +1,649 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.net.NegativeCache;
+import ca.ubc.cs317.dict.net.RequestScheduler;
+import ca.ubc.cs317.dict.net.ResponseCache;
+import ca.ubc.cs317.dict.util.DictStringParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * An RFC 2229 server that relays the queries of many downstream clients to one upstream DICT server. All client
+ * connections are served by a single selector thread, so thousands of idle clients cost a few buffers each rather
+ * than a thread each. Queries are answered from a MATCH and DEFINE cache shared by every client; misses are sent
+ * upstream over a small DictionaryConnectionPool, and identical queries that arrive while one is in flight wait for
+ * the same upstream reply instead of being sent again.
+ *
+ * Each client's commands are answered in order, one at a time; commands sent ahead (pipelined) are queued until the
+ * reply to the previous one has been written.
+ * <pre>
+ *     java ca.ubc.cs317.dict.server.DictProxyServer --upstream host[:port] [--port n] [--connections n]
+ * </pre>
+ */
+public class DictProxyServer {
+
+    private static final int MAX_LINE_LENGTH = 4096;
+    /** Stands for a line longer than MAX_LINE_LENGTH in the queue of commands; no command contains a line break. */
+    private static final String LINE_TOO_LONG = "\n";
+    private static final int MAX_QUEUED_COMMANDS = 64;
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final DictionaryConnectionPool pool;
+    // Upstream queries go through the scheduler, which keeps as many in flight as the upstream server can take
+    private final RequestScheduler scheduler;
+    private final NegativeCache negativeCache = new NegativeCache();
+    private final ResponseCache responseCache = new ResponseCache();
+    private final Map<String, Database> databases = new LinkedHashMap<>();
+    private final Map<String, MatchingStrategy> strategies = new LinkedHashMap<>();
+    private final ConcurrentMap<String, String> databaseInfo = new ConcurrentHashMap<>();
+    // Upstream queries in progress, by command, so identical queries are collapsed into one
+    private final ConcurrentMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    // Replies computed by worker threads, handed to the selector thread to be written
+    private final Queue<Reply> completedReplies = new ConcurrentLinkedQueue<>();
+    private final ExecutorService workers;
+
+    private final AtomicLong commandsServed = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong upstreamQueries = new AtomicLong();
+    private final AtomicLong collapsedQueries = new AtomicLong();
+    private final AtomicInteger clientCount = new AtomicInteger();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * @param pool Connections to the upstream server. The pool's caches are replaced by the proxy's shared caches.
+     */
+    public DictProxyServer(DictionaryConnectionPool pool) {
+        this.pool = pool;
+        this.scheduler = new RequestScheduler(pool);
+        pool.setNegativeCache(negativeCache);
+        pool.setResponseCache(responseCache);
+        this.workers = Executors.newFixedThreadPool(pool.getMaxConnections(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dict-proxy-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Number of commands answered so far. */
+    public long getCommandsServed() {
+        return commandsServed.get();
+    }
+
+    /** Number of MATCH and DEFINE commands answered from the cache, without waiting for a worker. */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /** Number of MATCH, DEFINE and SHOW INFO commands that needed the upstream server. */
+    public long getUpstreamQueries() {
+        return upstreamQueries.get();
+    }
+
+    /** Number of commands that waited for an identical query already in flight instead of being sent upstream. */
+    public long getCollapsedQueries() {
+        return collapsedQueries.get();
+    }
+
+    public int getClientCount() {
+        return clientCount.get();
+    }
+
+    /** Number of upstream queries currently allowed in flight at the same time. */
+    public int getUpstreamConcurrencyLimit() {
+        return scheduler.getLimiter().getLimit();
+    }
+
+    /** Loads the upstream catalog and starts accepting clients.
+     *
+     * @param port Port to listen on, or 0 to use any free port (see getPort).
+     * @throws DictConnectionException If the upstream database and strategy lists can't be retrieved.
+     * @throws IOException If the port can't be bound.
+     */
+    public synchronized void start(int port) throws DictConnectionException, IOException {
+        DictionaryConnection connection = pool.acquire();
+        try {
+            for (Database database : connection.getDatabaseList())
+                databases.put(database.getName(), database);
+            for (MatchingStrategy strategy : connection.getStrategyList())
+                strategies.put(strategy.getName(), strategy);
+            pool.release(connection);
+        } catch (DictConnectionException e) {
+            pool.discard(connection);
+            throw e;
+        }
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                selectLoop();
+            }
+        }, "dict-proxy-selector");
+        selectorThread.start();
+    }
+
+    public synchronized int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /** Disconnects every client, stops the server and closes the upstream connections. */
+    public synchronized void stop() {
+        running = false;
+        if (selector != null)
+            selector.wakeup();
+        try {
+            if (selectorThread != null)
+                selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+        scheduler.close();
+    }
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Reply reply;
+                while ((reply = completedReplies.poll()) != null)
+                    deliver(reply.client, reply.text);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid())
+                            continue;
+                        if (key.isAcceptable())
+                            accept();
+                        if (key.isValid() && key.isReadable())
+                            read((Client) key.attachment());
+                        if (key.isValid() && key.isWritable())
+                            write((Client) key.attachment());
+                    } catch (IOException e) {
+                        // Client went away
+                        close((Client) key.attachment());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Proxy selector failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Client)
+                    close((Client) key.attachment());
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                // Ignored, the server is going away anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Client client = new Client(channel);
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            clientCount.incrementAndGet();
+            send(client, DictResponses.status(220, "dict proxy <auth.mime> <" + System.nanoTime() + "@proxy>"));
+        }
+    }
+
+    private void read(Client client) throws IOException {
+        client.readBuffer.clear();
+        int count = client.channel.read(client.readBuffer);
+        if (count < 0) {
+            close(client);
+            return;
+        }
+        client.readBuffer.flip();
+        while (client.readBuffer.hasRemaining()) {
+            byte b = client.readBuffer.get();
+            if (b == '\n') {
+                String line = new String(client.line.toByteArray(), StandardCharsets.UTF_8).trim();
+                client.line.reset();
+                if (client.lineTooLong)
+                    client.commands.add(LINE_TOO_LONG);
+                else if (!line.isEmpty())
+                    client.commands.add(line);
+                client.lineTooLong = false;
+            } else if (client.line.size() < MAX_LINE_LENGTH) {
+                client.line.write(b);
+            } else {
+                // The rest of the line is dropped, and the line is refused rather than run cut short
+                client.lineTooLong = true;
+            }
+        }
+        processCommands(client);
+    }
+
+    /** Writes pending output once the client can take it, then carries on with the client's queued commands. */
+    private void write(Client client) throws IOException {
+        if (!flush(client))
+            return;
+        if (client.closeAfterWrite) {
+            close(client);
+            return;
+        }
+        processCommands(client);
+    }
+
+    private void send(Client client, String text) throws IOException {
+        client.output.add(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        if (!flush(client))
+            client.key.interestOps(client.key.interestOps() | SelectionKey.OP_WRITE);
+        else if (client.closeAfterWrite)
+            close(client);
+    }
+
+    /** Writes as much pending output as the socket accepts without blocking.
+     *
+     * @return true if all output was written.
+     */
+    private boolean flush(Client client) throws IOException {
+        while (!client.output.isEmpty()) {
+            ByteBuffer buffer = client.output.peek();
+            client.channel.write(buffer);
+            if (buffer.hasRemaining())
+                return false;
+            client.output.poll();
+        }
+        return true;
+    }
+
+    private void updateInterest(Client client) {
+        int ops = 0;
+        // Stop reading from a client that sends commands much faster than it reads replies
+        if (client.commands.size() <= MAX_QUEUED_COMMANDS)
+            ops |= SelectionKey.OP_READ;
+        if (!client.output.isEmpty())
+            ops |= SelectionKey.OP_WRITE;
+        client.key.interestOps(ops);
+    }
+
+    /** Answers the client's queued commands until one needs the upstream server or the client stops reading. */
+    private void processCommands(Client client) throws IOException {
+        while (client.key.isValid() && !client.busy && client.output.isEmpty() && !client.commands.isEmpty()) {
+            final String command = client.commands.poll();
+            commandsServed.incrementAndGet();
+            if (command.equals(LINE_TOO_LONG)) {
+                send(client, DictResponses.status(500, "line too long"));
+                continue;
+            }
+            String[] atoms = DictStringParser.splitAtoms(command);
+            String name = atoms[0].toUpperCase(Locale.ROOT);
+            if (name.equals("QUIT")) {
+                client.closeAfterWrite = true;
+                send(client, DictResponses.status(221, "bye"));
+                return;
+            }
+            String reply = answerLocally(name, atoms);
+            if (reply != null) {
+                send(client, reply);
+                continue;
+            }
+            // Needs the upstream server; answer the next command once this one completes
+            client.busy = true;
+            dispatch(client, command, name, atoms);
+        }
+        if (client.key.isValid())
+            updateInterest(client);
+    }
+
+    /** Answers a command without the upstream server, if possible.
+     *
+     * @return The reply, or null if the command needs the upstream server.
+     */
+    private String answerLocally(String name, String[] atoms) {
+        try {
+            return answerWithoutConnection(name, atoms);
+        } catch (DictConnectionException e) {
+            // Not thrown without a connection, but if it were the upstream server would have to answer anyway
+            return null;
+        }
+    }
+
+    private String answerWithoutConnection(String name, String[] atoms) throws DictConnectionException {
+        switch (name) {
+            case "CLIENT":
+            case "OPTION":
+                return DictResponses.status(250, "ok");
+            case "STATUS":
+                return DictResponses.status(210, "status [d/m/c = " + commandsServed.get() + "/" +
+                        cacheHits.get() + "/" + upstreamQueries.get() + "]");
+            case "SHOW":
+                if (atoms.length < 2)
+                    return DictResponses.status(501, "syntax error, illegal parameters");
+                switch (atoms[1].toUpperCase(Locale.ROOT)) {
+                    case "DB":
+                    case "DATABASES":
+                        return DictResponses.databaseList(databases.values());
+                    case "STRAT":
+                    case "STRATEGIES":
+                        return DictResponses.strategyList(strategies.values());
+                    case "INFO":
+                        if (atoms.length < 3 || !databases.containsKey(atoms[2]))
+                            return DictResponses.status(550, "invalid database, use \"SHOW DB\" for list of databases");
+                        String info = databaseInfo.get(atoms[2]);
+                        return info == null ? null : DictResponses.info(databases.get(atoms[2]), info);
+                    default:
+                        return DictResponses.status(501, "syntax error, illegal parameters");
+                }
+            case "MATCH":
+                if (atoms.length != 4)
+                    return DictResponses.status(501, "syntax error, illegal parameters");
+                if (!atoms[2].equals(".") && !strategies.containsKey(atoms[2]))
+                    return DictResponses.status(551, "invalid strategy, use \"SHOW STRAT\" for a list of strategies");
+                if (selectDatabases(atoms[1]) == null)
+                    return DictResponses.status(550, "invalid database, use \"SHOW DB\" for list of databases");
+                return countHit(match(null, atoms[1], atoms[2], atoms[3]));
+            case "DEFINE":
+                if (atoms.length != 3)
+                    return DictResponses.status(501, "syntax error, illegal parameters");
+                if (selectDatabases(atoms[1]) == null)
+                    return DictResponses.status(550, "invalid database, use \"SHOW DB\" for list of databases");
+                return countHit(define(null, atoms[1], atoms[2]));
+            default:
+                return DictResponses.status(500, "unknown command");
+        }
+    }
+
+    private String countHit(String reply) {
+        if (reply != null)
+            cacheHits.incrementAndGet();
+        return reply;
+    }
+
+    /** Sends a command to a worker, or joins an identical command already in flight. */
+    private void dispatch(final Client client, final String command, final String name, final String[] atoms) {
+        String key = name + " " + String.join(" ", Arrays.asList(atoms).subList(1, atoms.length))
+                .toLowerCase(Locale.ROOT);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            collapsedQueries.incrementAndGet();
+            future = existing;
+        } else {
+            final CompletableFuture<String> result = future;
+            final String inFlightKey = key;
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    upstreamQueries.incrementAndGet();
+                    try {
+                        result.complete(answerUpstream(name, atoms));
+                    } catch (DictConnectionException e) {
+                        System.out.println("Upstream query failed (" + command + "): " + e.getMessage());
+                        result.complete(DictResponses.status(420, "Server temporarily unavailable"));
+                    } catch (RuntimeException e) {
+                        result.complete(DictResponses.status(420, "Server temporarily unavailable"));
+                    } finally {
+                        inFlight.remove(inFlightKey, result);
+                    }
+                }
+            });
+        }
+        future.thenAccept(new Consumer<String>() {
+            @Override
+            public void accept(String reply) {
+                completedReplies.add(new Reply(client, reply));
+                selector.wakeup();
+            }
+        });
+    }
+
+    private String answerUpstream(final String name, final String[] atoms) throws DictConnectionException {
+        return scheduler.execute(RequestScheduler.Priority.INTERACTIVE, new RequestScheduler.Request<String>() {
+            @Override
+            public String execute(DictionaryConnection connection) throws DictConnectionException {
+                if (name.equals("MATCH"))
+                    return match(connection, atoms[1], atoms[2], atoms[3]);
+                if (name.equals("DEFINE"))
+                    return define(connection, atoms[1], atoms[2]);
+                Database database = databases.get(atoms[2]);
+                String info = connection.getDatabaseInfo(database);
+                databaseInfo.put(database.getName(), info);
+                return DictResponses.info(database, info);
+            }
+        });
+    }
+
+    /** Computes the reply to a MATCH command, one database at a time so every database's result is cached on its own.
+     * A query in '*' or '!' that is not entirely cached is sent upstream as a single command, whose reply is then
+     * split by database into the cache.
+     *
+     * @param connection Connection used for the databases that are not cached, or null to answer only from the cache.
+     * @return The reply, or null if connection is null and some result is not cached.
+     */
+    private String match(DictionaryConnection connection, String databaseName, String strategyName, String word)
+            throws DictConnectionException {
+        MatchingStrategy strategy = strategyName.equals(".") ? new MatchingStrategy(".", "Server default")
+                : strategies.get(strategyName);
+        Map<String, Set<String>> matches = new LinkedHashMap<>();
+        for (Database database : selectDatabases(databaseName)) {
+            Set<String> words;
+            if (negativeCache.isKnownMiss(strategy.getName(), database.getName(), word))
+                words = Collections.emptySet();
+            else if ((words = responseCache.getMatches(strategy.getName(), database.getName(), word)) == null) {
+                if (connection == null)
+                    return null;
+                if (isSpecial(databaseName))
+                    return DictResponses.matchList(matchUpstream(connection, databaseName, strategy, word));
+                words = connection.getMatchList(word, strategy, database);
+            }
+            if (words.isEmpty())
+                continue;
+            matches.put(database.getName(), words);
+            if (databaseName.equals("!"))
+                break;
+        }
+        return DictResponses.matchList(matches);
+    }
+
+    /** Sends a MATCH command in '*' or '!' upstream, and caches the result of each database it covers: the matches of
+     * the databases that have some, and a miss for the others (for '!', only those before the first match).
+     *
+     * @return The matches, by database.
+     */
+    private Map<String, Set<String>> matchUpstream(DictionaryConnection connection, String databaseName,
+                                                   MatchingStrategy strategy, String word)
+            throws DictConnectionException {
+        Map<String, Set<String>> matches = connection.getMatchesByDatabase(word, strategy,
+                new Database(databaseName, ""));
+        for (Database database : databases.values()) {
+            Set<String> words = matches.get(database.getName());
+            if (words == null) {
+                negativeCache.recordMiss(strategy.getName(), database.getName(), word);
+                continue;
+            }
+            responseCache.putMatches(strategy.getName(), database.getName(), word, words);
+            if (databaseName.equals("!"))
+                break;
+        }
+        return matches;
+    }
+
+    /** Computes the reply to a DEFINE command, one database at a time so every database's result is cached on its own.
+     * A query in '*' or '!' that is not entirely cached is sent upstream as a single command, whose reply is then
+     * split by database into the cache.
+     *
+     * @param connection Connection used for the databases that are not cached, or null to answer only from the cache.
+     * @return The reply, or null if connection is null and some result is not cached.
+     */
+    private String define(DictionaryConnection connection, String databaseName, String word)
+            throws DictConnectionException {
+        List<Definition> definitions = new ArrayList<>();
+        for (Database database : selectDatabases(databaseName)) {
+            Collection<Definition> found;
+            if (negativeCache.isKnownMiss(NegativeCache.DEFINE, database.getName(), word))
+                found = Collections.emptyList();
+            else if ((found = responseCache.getDefinitions(database.getName(), word)) == null) {
+                if (connection == null)
+                    return null;
+                if (isSpecial(databaseName))
+                    return DictResponses.definitions(defineUpstream(connection, databaseName, word));
+                found = connection.getDefinitions(word, database);
+            }
+            definitions.addAll(found);
+            if (databaseName.equals("!") && !definitions.isEmpty())
+                break;
+        }
+        return DictResponses.definitions(definitions);
+    }
+
+    /** Sends a DEFINE command in '*' or '!' upstream, and caches the result of each database it covers, like
+     * matchUpstream.
+     *
+     * @return The definitions.
+     */
+    private Collection<Definition> defineUpstream(DictionaryConnection connection, String databaseName, String word)
+            throws DictConnectionException {
+        Collection<Definition> definitions = connection.getDefinitions(word, new Database(databaseName, ""));
+        Map<String, List<Definition>> byDatabase = new HashMap<>();
+        for (Definition definition : definitions) {
+            List<Definition> found = byDatabase.get(definition.getDatabase().getName());
+            if (found == null)
+                byDatabase.put(definition.getDatabase().getName(), found = new ArrayList<>());
+            found.add(definition);
+        }
+        for (Database database : databases.values()) {
+            List<Definition> found = byDatabase.get(database.getName());
+            if (found == null) {
+                negativeCache.recordMiss(NegativeCache.DEFINE, database.getName(), word);
+                continue;
+            }
+            responseCache.putDefinitions(database.getName(), word, found);
+            if (databaseName.equals("!"))
+                break;
+        }
+        return definitions;
+    }
+
+    private static boolean isSpecial(String databaseName) {
+        return databaseName.equals("*") || databaseName.equals("!");
+    }
+
+    private Collection<Database> selectDatabases(String name) {
+        if (isSpecial(name))
+            return databases.values();
+        Database database = databases.get(name);
+        return database == null ? null : Collections.singletonList(database);
+    }
+
+    /** Writes a reply computed by a worker, then carries on with the client's queued commands. Runs on the selector
+     * thread. */
+    private void deliver(Client client, String reply) {
+        if (!client.key.isValid())
+            return;
+        client.busy = false;
+        try {
+            send(client, reply);
+            if (client.key.isValid())
+                processCommands(client);
+        } catch (IOException e) {
+            close(client);
+        }
+    }
+
+    private void close(Client client) {
+        if (client == null || !client.channel.isOpen())
+            return;
+        clientCount.decrementAndGet();
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            // Ignored
+        }
+    }
+
+    /** State of a downstream connection. Only used by the selector thread. */
+    private static class Client {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final Queue<String> commands = new ArrayDeque<>();
+        private final Queue<ByteBuffer> output = new ArrayDeque<>();
+        private SelectionKey key;
+        private boolean busy;
+        private boolean closeAfterWrite;
+        private boolean lineTooLong;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private static class Reply {
+        private final Client client;
+        private final String text;
+
+        Reply(Client client, String text) {
+            this.client = client;
+            this.text = text;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2)
+            options.put(args[i], args[i + 1]);
+        if (!options.containsKey("--upstream")) {
+            System.out.println("Usage: DictProxyServer --upstream host[:port] [--port n] [--connections n]");
+            System.exit(1);
+        }
+        String host = options.get("--upstream");
+        int upstreamPort = DictionaryConnection.DEFAULT_PORT;
+        if (host.contains(":")) {
+            upstreamPort = Integer.parseInt(host.substring(host.indexOf(':') + 1));
+            host = host.substring(0, host.indexOf(':'));
+        }
+        int port = Integer.parseInt(options.containsKey("--port") ? options.get("--port") : "2628");
+        int connections = Integer.parseInt(options.containsKey("--connections") ? options.get("--connections") : "4");
+
+        DictProxyServer proxy = new DictProxyServer(new DictionaryConnectionPool(host, upstreamPort, connections));
+        try {
+            proxy.start(port);
+        } catch (DictConnectionException e) {
+            System.out.println("Could not reach the upstream server: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("DICT proxy for " + host + ":" + upstreamPort + " listening on port " + proxy.getPort());
+    }
+}
@@ -0,0 +1,107 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Formats RFC 2229 replies sent by the servers in this package. Every method returns complete reply text, including
+ * the final status line and CRLF line endings, with text lines dot-stuffed as required by the protocol.
+ */
+public class DictResponses {
+
+    private static final String CRLF = "\r\n";
+
+    public static String status(int code, String text) {
+        return code + " " + text + CRLF;
+    }
+
+    public static String databaseList(Collection<Database> databases) {
+        StringBuilder reply = new StringBuilder();
+        reply.append(status(110, databases.size() + " databases present"));
+        for (Database database : databases)
+            reply.append(database.getName()).append(' ').append(quote(database.getDescription())).append(CRLF);
+        reply.append('.').append(CRLF);
+        reply.append(status(250, "ok"));
+        return reply.toString();
+    }
+
+    public static String strategyList(Collection<MatchingStrategy> strategies) {
+        StringBuilder reply = new StringBuilder();
+        reply.append(status(111, strategies.size() + " strategies available"));
+        for (MatchingStrategy strategy : strategies)
+            reply.append(strategy.getName()).append(' ').append(quote(strategy.getDescription())).append(CRLF);
+        reply.append('.').append(CRLF);
+        reply.append(status(250, "ok"));
+        return reply.toString();
+    }
+
+    /** Formats the reply to a SHOW INFO command. */
+    public static String info(Database database, String text) {
+        StringBuilder reply = new StringBuilder();
+        reply.append(status(112, "database information follows for " + database.getName()));
+        appendText(reply, text);
+        reply.append('.').append(CRLF);
+        reply.append(status(250, "ok"));
+        return reply.toString();
+    }
+
+    /** Formats the reply to a MATCH command.
+     *
+     * @param matches Matching headwords, grouped by the name of the database where they were found.
+     * @return A 152 reply followed by the list of matches, or a 552 reply if there are no matches.
+     */
+    public static String matchList(Map<String, ? extends Collection<String>> matches) {
+        int count = 0;
+        for (Collection<String> words : matches.values())
+            count += words.size();
+        if (count == 0)
+            return status(552, "no match");
+        StringBuilder reply = new StringBuilder();
+        reply.append(status(152, count + " matches found"));
+        for (Map.Entry<String, ? extends Collection<String>> entry : matches.entrySet())
+            for (String word : entry.getValue())
+                reply.append(entry.getKey()).append(' ').append(quote(word)).append(CRLF);
+        reply.append('.').append(CRLF);
+        reply.append(status(250, "ok"));
+        return reply.toString();
+    }
+
+    /** Formats the reply to a DEFINE command.
+     *
+     * @param definitions Definitions to be sent, in order.
+     * @return A 150 reply followed by one 151 text block for each definition, or a 552 reply if there are none.
+     */
+    public static String definitions(Collection<Definition> definitions) {
+        if (definitions.isEmpty())
+            return status(552, "no match");
+        StringBuilder reply = new StringBuilder();
+        reply.append(status(150, definitions.size() + " definitions retrieved"));
+        for (Definition definition : definitions) {
+            Database database = definition.getDatabase();
+            reply.append("151 ").append(quote(definition.getWord())).append(' ')
+                    .append(database.getName()).append(' ').append(quote(database.getDescription())).append(CRLF);
+            appendText(reply, definition.getDefinition());
+            reply.append('.').append(CRLF);
+        }
+        reply.append(status(250, "ok"));
+        return reply.toString();
+    }
+
+    private static void appendText(StringBuilder reply, String text) {
+        if (text == null)
+            return;
+        for (String line : text.split("\r?\n", -1)) {
+            if (line.startsWith("."))
+                reply.append('.');
+            reply.append(line).append(CRLF);
+        }
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\"", "'") + "\"";
+    }
+}
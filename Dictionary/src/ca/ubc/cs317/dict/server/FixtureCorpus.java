@@ -0,0 +1,191 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.util.DictStringParser;
+import ca.ubc.cs317.dict.util.StringDistance;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An in-memory set of databases and definitions served by the stand-in server. A corpus can be built
+ * programmatically with addDatabase and addDefinition, or loaded from a fixture file with the following format:
+ * <pre>
+ *     # Lines starting with # are comments
+ *     database wn "WordNet (r) 3.0 (2006)"
+ *     define wn "apple"
+ *     apple
+ *         n 1: fruit with red or yellow or green skin
+ *     .
+ * </pre>
+ * Every definition body ends with a line containing a single period. Headwords are matched case-insensitively.
+ */
+public class FixtureCorpus {
+
+    public static final List<MatchingStrategy> STRATEGIES = Collections.unmodifiableList(Arrays.asList(
+            new MatchingStrategy("exact", "Match headwords exactly"),
+            new MatchingStrategy("prefix", "Match prefixes"),
+            new MatchingStrategy("substring", "Match substring occurring anywhere in a headword"),
+            new MatchingStrategy("suffix", "Match suffixes"),
+            new MatchingStrategy("re", "POSIX 1003.2 (modern) regular expressions"),
+            new MatchingStrategy("lev", "Match headwords within Levenshtein distance one"),
+            new MatchingStrategy("soundex", "Match using SOUNDEX algorithm")));
+
+    private final Map<String, Database> databases = new LinkedHashMap<>();
+    private final Map<String, TreeMap<String, List<Definition>>> entries = new HashMap<>();
+
+    public synchronized Database addDatabase(String name, String description) {
+        Database database = new Database(name, description);
+        databases.put(name, database);
+        entries.put(name, new TreeMap<String, List<Definition>>());
+        return database;
+    }
+
+    public synchronized void addDefinition(String databaseName, String word, String body) {
+        Database database = databases.get(databaseName);
+        if (database == null)
+            throw new IllegalArgumentException("Unknown database: " + databaseName);
+        Definition definition = new Definition(word, database);
+        definition.setDefinition(body);
+        List<Definition> list = entries.get(databaseName).get(normalize(word));
+        if (list == null)
+            entries.get(databaseName).put(normalize(word), list = new ArrayList<>());
+        list.add(definition);
+    }
+
+    public synchronized Collection<Database> getDatabases() {
+        return new ArrayList<>(databases.values());
+    }
+
+    public synchronized Database getDatabase(String name) {
+        return databases.get(name);
+    }
+
+    public MatchingStrategy getStrategy(String name) {
+        for (MatchingStrategy strategy : STRATEGIES)
+            if (strategy.getName().equals(name))
+                return strategy;
+        return null;
+    }
+
+    /** Returns all headwords of a database, in alphabetical order. */
+    public synchronized List<String> getHeadwords(String databaseName) {
+        List<String> headwords = new ArrayList<>();
+        for (List<Definition> definitions : entries.get(databaseName).values())
+            headwords.add(definitions.get(0).getWord());
+        return headwords;
+    }
+
+    /** Finds all definitions of a word in a single database.
+     *
+     * @return The definitions found, or an empty list if the word has no definition in the database.
+     */
+    public synchronized List<Definition> define(String databaseName, String word) {
+        List<Definition> definitions = entries.get(databaseName).get(normalize(word));
+        return definitions == null ? Collections.<Definition>emptyList() : new ArrayList<>(definitions);
+    }
+
+    /** Finds all headwords in a single database matching a word with the given strategy.
+     *
+     * @return The matching headwords, in alphabetical order.
+     * @throws IllegalArgumentException If the strategy is unknown or the word is not a valid pattern for it.
+     */
+    public synchronized List<String> match(String databaseName, String strategy, String word) {
+        TreeMap<String, List<Definition>> database = entries.get(databaseName);
+        String key = normalize(word);
+        Collection<String> keys;
+        switch (strategy) {
+            case "exact":
+                keys = database.containsKey(key) ? Collections.singleton(key) : Collections.<String>emptySet();
+                break;
+            case "prefix":
+                keys = database.subMap(key, key + Character.MAX_VALUE).keySet();
+                break;
+            default:
+                keys = new ArrayList<>();
+                for (String headword : database.keySet())
+                    if (matches(strategy, key, headword))
+                        keys.add(headword);
+        }
+        List<String> matches = new ArrayList<>();
+        for (String headword : keys)
+            matches.add(database.get(headword).get(0).getWord());
+        return matches;
+    }
+
+    private static boolean matches(String strategy, String key, String headword) {
+        switch (strategy) {
+            case "substring":
+                return headword.contains(key);
+            case "suffix":
+                return headword.endsWith(key);
+            case "re":
+                try {
+                    return Pattern.compile(key).matcher(headword).find();
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Invalid regular expression: " + key, e);
+                }
+            case "lev":
+                return Math.abs(headword.length() - key.length()) <= 1 &&
+                        StringDistance.levenshtein(headword, key) <= 1;
+            case "soundex":
+                return StringDistance.soundex(headword).equals(StringDistance.soundex(key));
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+    }
+
+    private static String normalize(String word) {
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    /** Loads a corpus from a fixture file. See the class description for the file format.
+     *
+     * @param path Location of the fixture file.
+     * @return The corpus containing all databases and definitions in the file.
+     * @throws IOException If the file can't be read or is not in the expected format.
+     */
+    public static FixtureCorpus load(Path path) throws IOException {
+        FixtureCorpus corpus = new FixtureCorpus();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] atoms = DictStringParser.splitAtoms(line);
+                if (atoms[0].equals("database") && atoms.length == 3) {
+                    corpus.addDatabase(atoms[1], atoms[2]);
+                } else if (atoms[0].equals("define") && atoms.length == 3) {
+                    StringBuilder body = new StringBuilder();
+                    while (!".".equals(line = reader.readLine())) {
+                        if (line == null)
+                            throw new IOException("Unterminated definition of " + atoms[2] + " in " + path);
+                        lineNumber++;
+                        if (body.length() > 0)
+                            body.append(System.lineSeparator());
+                        body.append(line);
+                    }
+                    lineNumber++;
+                    try {
+                        corpus.addDefinition(atoms[1], atoms[2], body.toString());
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException(path + ":" + lineNumber + ": " + e.getMessage());
+                    }
+                } else {
+                    throw new IOException(path + ":" + lineNumber + ": unexpected line: " + line);
+                }
+            }
+        }
+        return corpus;
+    }
+}
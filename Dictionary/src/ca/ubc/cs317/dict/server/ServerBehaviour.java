@@ -0,0 +1,91 @@
+package ca.ubc.cs317.dict.server;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tunable misbehaviour of the stand-in server: how slow it is, how fast it can send data and how often it fails.
+ * All settings can be changed while the server is running, and apply to every command received afterwards.
+ */
+public class ServerBehaviour {
+
+    private volatile long latencyMillis = 0;
+    private volatile long jitterMillis = 0;
+    private volatile long bytesPerSecond = 0;
+    private volatile double errorRate = 0;
+    private volatile int errorCode = 420;
+    private volatile int maxConnections = 0;
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /** Sets the fixed delay added before replying to each command. */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    /** Sets the maximum random delay added on top of the fixed latency, uniformly distributed. */
+    public void setJitterMillis(long jitterMillis) {
+        this.jitterMillis = jitterMillis;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /** Caps the rate at which each connection sends reply data. Zero means unlimited. */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /** Sets the probability (between 0 and 1) that a command is answered with the error code instead of a reply. */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    /** Sets the status code used for injected errors, e.g., 420 (temporarily unavailable) or 421 (shutting down). */
+    public void setErrorCode(int errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /** Limits the number of simultaneous client connections; extra clients get a 420 reply and are disconnected.
+     * Zero means unlimited. */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    long nextDelayMillis() {
+        long jitter = jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0;
+        return latencyMillis + jitter;
+    }
+
+    boolean nextIsError() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    static String errorText(int code) {
+        switch (code) {
+            case 420: return "Server temporarily unavailable";
+            case 421: return "Server shutting down at operator request";
+            case 500: return "Syntax error, command not recognized";
+            case 502: return "Command not implemented";
+            default: return "Injected error";
+        }
+    }
+}
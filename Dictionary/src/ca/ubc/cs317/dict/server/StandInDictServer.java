@@ -0,0 +1,337 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.util.DictStringParser;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small RFC 2229 server that answers SHOW DB, SHOW STRAT, SHOW INFO, MATCH and DEFINE from a FixtureCorpus, so the
+ * client can be exercised and load tested without touching a public server. Latency, bandwidth and errors are
+ * controlled by a ServerBehaviour, which can be changed while the server is running.
+ *
+ * The server can be embedded (start, getPort, stop) or run on its own:
+ * <pre>
+ *     java ca.ubc.cs317.dict.server.StandInDictServer fixture.txt [port] [--latency ms] [--jitter ms]
+ *          [--bandwidth bytes/s] [--error-rate p] [--error-code code] [--max-connections n]
+ * </pre>
+ */
+public class StandInDictServer {
+
+    private static final int WRITE_CHUNK_SIZE = 512;
+
+    private final FixtureCorpus corpus;
+    private final ServerBehaviour behaviour;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicLong commandsServed = new AtomicLong();
+    private final Set<Socket> clients = Collections.synchronizedSet(new HashSet<Socket>());
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    public StandInDictServer(FixtureCorpus corpus, ServerBehaviour behaviour) {
+        this.corpus = corpus;
+        this.behaviour = behaviour;
+    }
+
+    public ServerBehaviour getBehaviour() {
+        return behaviour;
+    }
+
+    /** Number of commands answered so far, including injected errors. */
+    public long getCommandsServed() {
+        return commandsServed.get();
+    }
+
+    /** Starts accepting connections on the loopback interface.
+     *
+     * @param port Port to listen on, or 0 to use any free port (see getPort).
+     * @throws IOException If the port can't be bound.
+     */
+    public synchronized void start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "standin-dict-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+    }
+
+    public synchronized int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /** Stops accepting connections and disconnects every client. */
+    public synchronized void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Ignored, the server is going away anyway
+        }
+        synchronized (clients) {
+            for (Socket client : clients) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // Ignored
+                }
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket client = serverSocket.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(client);
+                    }
+                });
+            } catch (IOException e) {
+                if (!serverSocket.isClosed())
+                    System.out.println("Stand-in server could not accept a connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        clients.add(client);
+        int active = activeConnections.incrementAndGet();
+        try {
+            client.setTcpNoDelay(true);
+            BufferedReader input = new BufferedReader(
+                    new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream output = new BufferedOutputStream(client.getOutputStream());
+            int maxConnections = behaviour.getMaxConnections();
+            if (maxConnections > 0 && active > maxConnections) {
+                send(output, DictResponses.status(420, "Server temporarily unavailable"));
+                return;
+            }
+            send(output, DictResponses.status(220, "stand-in dictd <auth.mime> <" + client.getPort() + "@localhost>"));
+            String line;
+            while ((line = input.readLine()) != null) {
+                if (line.trim().isEmpty())
+                    continue;
+                String reply = reply(line);
+                sleep(behaviour.nextDelayMillis());
+                commandsServed.incrementAndGet();
+                if (reply == null) {
+                    send(output, DictResponses.status(221, "bye"));
+                    break;
+                }
+                send(output, reply);
+            }
+        } catch (SocketException e) {
+            // Client went away or the server is stopping
+        } catch (IOException e) {
+            System.out.println("Stand-in server connection error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            activeConnections.decrementAndGet();
+            clients.remove(client);
+            try {
+                client.close();
+            } catch (IOException e) {
+                // Ignored
+            }
+        }
+    }
+
+    /** Computes the reply to a single command line.
+     *
+     * @return The full reply text, or null if the client asked to quit.
+     */
+    String reply(String line) {
+        String[] atoms = DictStringParser.splitAtoms(line);
+        String command = atoms[0].toUpperCase(Locale.ROOT);
+        if (command.equals("QUIT"))
+            return null;
+        if (behaviour.nextIsError())
+            return DictResponses.status(behaviour.getErrorCode(), ServerBehaviour.errorText(behaviour.getErrorCode()));
+        switch (command) {
+            case "CLIENT":
+            case "OPTION":
+                return DictResponses.status(250, "ok");
+            case "STATUS":
+                return DictResponses.status(210, "status [d/m/c = " + commandsServed.get() + "]");
+            case "SHOW":
+                if (atoms.length < 2)
+                    return DictResponses.status(501, "syntax error, illegal parameters");
+                switch (atoms[1].toUpperCase(Locale.ROOT)) {
+                    case "DB":
+                    case "DATABASES":
+                        return DictResponses.databaseList(corpus.getDatabases());
+                    case "STRAT":
+                    case "STRATEGIES":
+                        return DictResponses.strategyList(FixtureCorpus.STRATEGIES);
+                    case "INFO":
+                        Database database = atoms.length > 2 ? corpus.getDatabase(atoms[2]) : null;
+                        if (database == null)
+                            return DictResponses.status(550, "invalid database, use \"SHOW DB\" for list of databases");
+                        return DictResponses.info(database, "Stand-in fixture database " + database.getName() +
+                                "\n" + corpus.getHeadwords(database.getName()).size() + " headwords");
+                    default:
+                        return DictResponses.status(501, "syntax error, illegal parameters");
+                }
+            case "MATCH":
+                if (atoms.length != 4)
+                    return DictResponses.status(501, "syntax error, illegal parameters");
+                return match(atoms[1], atoms[2], atoms[3]);
+            case "DEFINE":
+                if (atoms.length != 3)
+                    return DictResponses.status(501, "syntax error, illegal parameters");
+                return define(atoms[1], atoms[2]);
+            default:
+                return DictResponses.status(500, "unknown command");
+        }
+    }
+
+    private String match(String databaseName, String strategy, String word) {
+        if (corpus.getStrategy(strategy) == null && !strategy.equals("."))
+            return DictResponses.status(551, "invalid strategy, use \"SHOW STRAT\" for a list of strategies");
+        if (strategy.equals("."))
+            strategy = "prefix";
+        List<Database> databases = selectDatabases(databaseName);
+        if (databases == null)
+            return DictResponses.status(550, "invalid database, use \"SHOW DB\" for list of databases");
+        Map<String, List<String>> matches = new LinkedHashMap<>();
+        try {
+            for (Database database : databases) {
+                List<String> words = corpus.match(database.getName(), strategy, word);
+                if (words.isEmpty())
+                    continue;
+                matches.put(database.getName(), words);
+                if (databaseName.equals("!"))
+                    break;
+            }
+        } catch (IllegalArgumentException e) {
+            return DictResponses.status(501, "syntax error, illegal parameters");
+        }
+        return DictResponses.matchList(matches);
+    }
+
+    private String define(String databaseName, String word) {
+        List<Database> databases = selectDatabases(databaseName);
+        if (databases == null)
+            return DictResponses.status(550, "invalid database, use \"SHOW DB\" for list of databases");
+        List<Definition> definitions = new ArrayList<>();
+        for (Database database : databases) {
+            definitions.addAll(corpus.define(database.getName(), word));
+            if (databaseName.equals("!") && !definitions.isEmpty())
+                break;
+        }
+        return DictResponses.definitions(definitions);
+    }
+
+    private List<Database> selectDatabases(String name) {
+        if (name.equals("*") || name.equals("!"))
+            return new ArrayList<>(corpus.getDatabases());
+        Database database = corpus.getDatabase(name);
+        return database == null ? null : Collections.singletonList(database);
+    }
+
+    private void send(OutputStream output, String reply) throws IOException, InterruptedException {
+        byte[] bytes = reply.getBytes(StandardCharsets.UTF_8);
+        long bytesPerSecond = behaviour.getBytesPerSecond();
+        if (bytesPerSecond <= 0) {
+            output.write(bytes);
+            output.flush();
+            return;
+        }
+        long start = System.nanoTime();
+        for (int offset = 0; offset < bytes.length; offset += WRITE_CHUNK_SIZE) {
+            int length = Math.min(WRITE_CHUNK_SIZE, bytes.length - offset);
+            output.write(bytes, offset, length);
+            output.flush();
+            long dueNanos = (offset + length) * 1000000000L / bytesPerSecond;
+            sleep((dueNanos - (System.nanoTime() - start)) / 1000000);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0)
+            Thread.sleep(millis);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: StandInDictServer fixture-file [port] [--latency ms] [--jitter ms] " +
+                    "[--bandwidth bytes/s] [--error-rate p] [--error-code code] [--max-connections n]");
+            System.exit(1);
+        }
+        ServerBehaviour behaviour = new ServerBehaviour();
+        int port = 2628;
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                port = Integer.parseInt(args[i]);
+                continue;
+            }
+            if (i + 1 >= args.length || !applyOption(behaviour, args[i], args[i + 1])) {
+                System.out.println("Unknown or incomplete option: " + args[i]);
+                System.exit(1);
+            }
+            i++;
+        }
+        StandInDictServer server = new StandInDictServer(FixtureCorpus.load(Paths.get(args[0])), behaviour);
+        server.start(port);
+        System.out.println("Stand-in DICT server listening on port " + server.getPort());
+    }
+
+    /** Applies a command line option of the form --name value to a behaviour. Shared with the tools that embed the
+     * server.
+     *
+     * @return false if the option is not a behaviour option.
+     */
+    public static boolean applyOption(ServerBehaviour behaviour, String option, String value) {
+        switch (option) {
+            case "--latency":
+                behaviour.setLatencyMillis(Long.parseLong(value));
+                return true;
+            case "--jitter":
+                behaviour.setJitterMillis(Long.parseLong(value));
+                return true;
+            case "--bandwidth":
+                behaviour.setBytesPerSecond(Long.parseLong(value));
+                return true;
+            case "--error-rate":
+                behaviour.setErrorRate(Double.parseDouble(value));
+                return true;
+            case "--error-code":
+                behaviour.setErrorCode(Integer.parseInt(value));
+                return true;
+            case "--max-connections":
+                behaviour.setMaxConnections(Integer.parseInt(value));
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ca.ubc.cs317.dict.store;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decompressed dictzip chunks, shared by every reader (and thread) in the application. The cache is bounded by the
+ * total size of the chunks it holds, evicting the least recently used chunks first.
+ */
+public class ChunkCache {
+
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final ChunkCache SHARED = new ChunkCache(DEFAULT_MAX_BYTES);
+
+    private final long maxBytes;
+    private long size = 0;
+    private final LinkedHashMap<Key, byte[]> chunks = new LinkedHashMap<>(64, 0.75f, true);
+    private long hits = 0;
+    private long misses = 0;
+
+    public ChunkCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** The cache used by readers that are not given one explicitly. */
+    public static ChunkCache getShared() {
+        return SHARED;
+    }
+
+    synchronized byte[] get(Object file, int chunk) {
+        byte[] data = chunks.get(new Key(file, chunk));
+        if (data == null)
+            misses++;
+        else
+            hits++;
+        return data;
+    }
+
+    synchronized void put(Object file, int chunk, byte[] data) {
+        byte[] previous = chunks.put(new Key(file, chunk), data);
+        if (previous != null)
+            size -= previous.length;
+        size += data.length;
+        while (size > maxBytes && chunks.size() > 1) {
+            Map.Entry<Key, byte[]> eldest = chunks.entrySet().iterator().next();
+            size -= eldest.getValue().length;
+            chunks.remove(eldest.getKey());
+        }
+    }
+
+    /** Drops every chunk of a file, e.g., when the file is closed. */
+    synchronized void invalidate(Object file) {
+        for (Iterator<Map.Entry<Key, byte[]>> it = chunks.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, byte[]> entry = it.next();
+            if (entry.getKey().file == file) {
+                size -= entry.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static class Key {
+        private final Object file;
+        private final int chunk;
+
+        Key(Object file, int chunk) {
+            this.file = file;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return file == key.file && chunk == key.chunk;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(file) + chunk;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ca.ubc.cs317.dict.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to the definition text of a dictd database (.dict or .dict.dz file), addressed by the offsets and
+ * lengths in its .index file. Implementations are safe to use from several threads at once.
+ */
+public abstract class DictData implements Closeable {
+
+    /** Reads a range of the uncompressed text.
+     *
+     * @throws IOException If the file can't be read or the range is outside the file.
+     */
+    public abstract byte[] read(long offset, int length) throws IOException;
+
+    /** Opens a data file, using a DictZipData if its name ends with .dz and a plain reader otherwise. */
+    public static DictData open(Path path) throws IOException {
+        if (path.getFileName().toString().endsWith(".dz"))
+            return new DictZipData(path, ChunkCache.getShared());
+        return new Plain(path);
+    }
+
+    /** An uncompressed .dict file. */
+    static class Plain extends DictData {
+        private final FileChannel channel;
+
+        Plain(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                // Positional reads don't move the channel position, so concurrent readers don't interfere
+                if (channel.read(buffer, offset + buffer.position()) < 0)
+                    throw new IOException("Range past the end of the file");
+            }
+            return buffer.array();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package ca.ubc.cs317.dict.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to a dictzip (.dict.dz) file. A dictzip file is a regular gzip file whose deflate stream was flushed
+ * every CHLEN bytes of input, so each chunk can be inflated on its own. The size of every compressed chunk is stored
+ * in the "RA" subfield of the gzip extra field:
+ * <pre>
+ *     'R' 'A' LEN(2) VER(2)=1 CHLEN(2) CHCNT(2) size(2) * CHCNT
+ * </pre>
+ * Reading a range only inflates the chunks that cover it, and inflated chunks are kept in a ChunkCache.
+ */
+public class DictZipData extends DictData {
+
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    private final FileChannel channel;
+    private final ChunkCache cache;
+    private final int chunkLength;
+    private final long[] chunkOffsets; // file offset of each compressed chunk, plus one past the last
+    private final long uncompressedLength;
+
+    public DictZipData(Path path, ChunkCache cache) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.cache = cache;
+        try {
+            ByteBuffer header = readFully(0, (int) Math.min(channel.size(), 10 + 2 + 65535));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.get() != (byte) 0x1f || header.get() != (byte) 0x8b || header.get() != 8)
+                throw new IOException("Not a gzip file: " + path);
+            int flags = header.get() & 0xff;
+            header.position(10);
+            if ((flags & FEXTRA) == 0)
+                throw new IOException("Not a dictzip file (no extra field): " + path);
+            int extraLength = header.getShort() & 0xffff;
+            int extraEnd = header.position() + extraLength;
+            int chunkLength = -1;
+            int[] chunkSizes = null;
+            while (header.position() + 4 <= extraEnd) {
+                byte si1 = header.get(), si2 = header.get();
+                int subfieldLength = header.getShort() & 0xffff;
+                int subfieldEnd = header.position() + subfieldLength;
+                if (si1 == 'R' && si2 == 'A') {
+                    if ((header.getShort() & 0xffff) != 1)
+                        throw new IOException("Unsupported dictzip version: " + path);
+                    chunkLength = header.getShort() & 0xffff;
+                    chunkSizes = new int[header.getShort() & 0xffff];
+                    for (int i = 0; i < chunkSizes.length; i++)
+                        chunkSizes[i] = header.getShort() & 0xffff;
+                }
+                header.position(subfieldEnd);
+            }
+            if (chunkSizes == null)
+                throw new IOException("Not a dictzip file (no RA subfield): " + path);
+            header.position(extraEnd);
+            if ((flags & FNAME) != 0)
+                skipZeroTerminated(header);
+            if ((flags & FCOMMENT) != 0)
+                skipZeroTerminated(header);
+            if ((flags & FHCRC) != 0)
+                header.position(header.position() + 2);
+
+            this.chunkLength = chunkLength;
+            this.chunkOffsets = new long[chunkSizes.length + 1];
+            chunkOffsets[0] = header.position();
+            for (int i = 0; i < chunkSizes.length; i++)
+                chunkOffsets[i + 1] = chunkOffsets[i] + chunkSizes[i];
+            // The gzip trailer ends with the uncompressed length (modulo 2^32)
+            ByteBuffer trailer = readFully(channel.size() - 4, 4).order(ByteOrder.LITTLE_ENDIAN);
+            this.uncompressedLength = trailer.getInt() & 0xffffffffL;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Corrupted dictzip header: " + path, e);
+        }
+    }
+
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        byte[] result = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            long position = offset + copied;
+            int chunk = (int) (position / chunkLength);
+            if (chunk >= chunkOffsets.length - 1)
+                throw new IOException("Range past the end of the file");
+            byte[] data = chunk(chunk);
+            int start = (int) (position - (long) chunk * chunkLength);
+            if (start >= data.length)
+                throw new IOException("Range past the end of the file");
+            int count = Math.min(length - copied, data.length - start);
+            System.arraycopy(data, start, result, copied, count);
+            copied += count;
+        }
+        return result;
+    }
+
+    private byte[] chunk(int chunk) throws IOException {
+        byte[] data = cache.get(this, chunk);
+        if (data != null)
+            return data;
+        ByteBuffer compressed = readFully(chunkOffsets[chunk], (int) (chunkOffsets[chunk + 1] - chunkOffsets[chunk]));
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed.array());
+            byte[] buffer = new byte[chunkLength];
+            int size = 0;
+            while (size < buffer.length && !inflater.finished()) {
+                int inflated = inflater.inflate(buffer, size, buffer.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                size += inflated;
+            }
+            data = size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted dictzip chunk " + chunk, e);
+        } finally {
+            inflater.end();
+        }
+        cache.put(this, chunk, data);
+        return data;
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of file");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void skipZeroTerminated(ByteBuffer buffer) {
+        while (buffer.get() != 0) {
+            // Skip the file name or comment
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.invalidate(this);
+        channel.close();
+    }
+}
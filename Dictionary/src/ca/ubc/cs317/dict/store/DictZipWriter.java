@@ -0,0 +1,108 @@
+package ca.ubc.cs317.dict.store;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a file into the dictzip format read by DictZipData. Each chunk of input is deflated with a full flush,
+ * so the compressor state is reset at every chunk boundary and each chunk can later be inflated on its own. The last
+ * chunk also ends the deflate stream, so the output is a valid gzip file as well.
+ */
+public class DictZipWriter {
+
+    /** Chunk length used by dictzip itself; it keeps every compressed chunk below 64KB even if it doesn't compress. */
+    public static final int CHUNK_LENGTH = 58315;
+
+    /** The extra field is limited to 64KB, which limits the number of chunks (and the file to about 1.9GB). */
+    private static final int MAX_CHUNKS = (65535 - 10) / 2;
+
+    /** Compresses a file.
+     *
+     * @param source Uncompressed input.
+     * @param target Output file, normally named with a .dz extension. It is replaced if it exists.
+     * @throws IOException If a file can't be read or written, or the input is too large for the format.
+     */
+    public static void compress(Path source, Path target) throws IOException {
+        long length = Files.size(source);
+        int chunkCount = (int) Math.max(1, (length + CHUNK_LENGTH - 1) / CHUNK_LENGTH);
+        if (length > (long) MAX_CHUNKS * CHUNK_LENGTH)
+            throw new IOException("File too large for dictzip: " + source);
+
+        // The header holds the size of every compressed chunk, so the chunks are written to a temporary file first
+        Path body = target.resolveSibling(target.getFileName() + ".body");
+        int[] chunkSizes = new int[chunkCount];
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source));
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(body))) {
+            byte[] chunk = new byte[CHUNK_LENGTH];
+            byte[] output = new byte[CHUNK_LENGTH + 1024];
+            for (int i = 0; i < chunkCount; i++) {
+                int size = readChunk(in, chunk);
+                crc.update(chunk, 0, size);
+                deflater.setInput(chunk, 0, size);
+                boolean last = i == chunkCount - 1;
+                if (last)
+                    deflater.finish();
+                // The output buffer is larger than the worst case of deflate, so a single call flushes the whole chunk
+                int compressed = last ? deflater.deflate(output)
+                        : deflater.deflate(output, 0, output.length, Deflater.FULL_FLUSH);
+                if (compressed > 65535 || (last ? !deflater.finished() : compressed == output.length))
+                    throw new IOException("Compressed chunk too large");
+                chunkSizes[i] = compressed;
+                out.write(output, 0, compressed);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(body);
+            throw e;
+        } finally {
+            deflater.end();
+        }
+
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+            out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 2, (byte) 255 }); // FEXTRA, no mtime, unknown OS
+            int subfieldLength = 6 + 2 * chunkCount;
+            writeShort(out, 4 + subfieldLength);
+            out.write('R');
+            out.write('A');
+            writeShort(out, subfieldLength);
+            writeShort(out, 1);
+            writeShort(out, CHUNK_LENGTH);
+            writeShort(out, chunkCount);
+            for (int size : chunkSizes)
+                writeShort(out, size);
+            Files.copy(body, out);
+            writeInt(out, (int) crc.getValue());
+            writeInt(out, (int) length);
+        } finally {
+            Files.deleteIfExists(body);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int readChunk(InputStream in, byte[] chunk) throws IOException {
+        int size = 0;
+        while (size < chunk.length) {
+            int count = in.read(chunk, size, chunk.length - size);
+            if (count < 0)
+                break;
+            size += count;
+        }
+        return size;
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value & 0xffff);
+        writeShort(out, value >>> 16);
+    }
+}
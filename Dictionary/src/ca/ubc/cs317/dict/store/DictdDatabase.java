@@ -0,0 +1,177 @@
+package ca.ubc.cs317.dict.store;
+
+import ca.ubc.cs317.dict.index.HeadwordIndex;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A dictd-format database on disk: one or more pairs of .index and .dict (or .dict.dz) files, such as the shards of a
+ * mirrored database. The index is loaded in memory, sorted by headword, while definitions are read from the data
+ * files only when they are requested.
+ */
+public class DictdDatabase implements Closeable {
+
+    private final List<DictData> dataFiles = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private HeadwordIndex headwordIndex;
+
+    /** Opens a database.
+     *
+     * @param indexFiles The .index files of the database. The data file of each one is found by replacing the .index
+     *                   extension with .dict.dz or, if there is no such file, with .dict.
+     * @throws IOException If a file can't be read or is not in the expected format.
+     */
+    public DictdDatabase(Collection<Path> indexFiles) throws IOException {
+        try {
+            for (Path indexFile : indexFiles)
+                load(indexFile);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Invalid index file", e);
+        }
+        Collections.sort(entries);
+    }
+
+    private void load(Path indexFile) throws IOException {
+        String name = indexFile.getFileName().toString();
+        String base = name.endsWith(".index") ? name.substring(0, name.length() - ".index".length()) : name;
+        Path dataFile = indexFile.resolveSibling(base + ".dict.dz");
+        if (!Files.exists(dataFile))
+            dataFile = indexFile.resolveSibling(base + ".dict");
+        DictData data = DictData.open(dataFile);
+        dataFiles.add(data);
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty())
+                    entries.add(new Entry(DictdIndexEntry.parse(line), data));
+            }
+        }
+    }
+
+    /** Number of headwords (including repeated ones) in the database. */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Finds the headwords equal to a word, ignoring case. */
+    public Set<String> findExact(String word) {
+        Set<String> result = new LinkedHashSet<>();
+        String key = word.toLowerCase();
+        for (int i = lowerBound(key); i < entries.size() && entries.get(i).key.equals(key); i++)
+            result.add(entries.get(i).entry.getHeadword());
+        return result;
+    }
+
+    /** Finds the headwords that start with a prefix, ignoring case, in alphabetical order. */
+    public Set<String> findPrefix(String prefix) {
+        Set<String> result = new LinkedHashSet<>();
+        String key = prefix.toLowerCase();
+        for (int i = lowerBound(key); i < entries.size() && entries.get(i).key.startsWith(key); i++)
+            result.add(entries.get(i).entry.getHeadword());
+        return result;
+    }
+
+    /** Returns the distinct headwords of the database, in alphabetical order ignoring case. */
+    public List<String> getHeadwords() {
+        Set<String> headwords = new LinkedHashSet<>();
+        for (Entry entry : entries)
+            headwords.add(entry.entry.getHeadword());
+        return new ArrayList<>(headwords);
+    }
+
+    /** Finds the headwords that contain a word, ignoring case. */
+    public Set<String> findSubstring(String word) {
+        return getHeadwordIndex().substring(word);
+    }
+
+    /** Finds the headwords that contain a match of a regular expression, ignoring case.
+     *
+     * @throws IllegalArgumentException If the expression is not valid.
+     */
+    public Set<String> findRegex(String expression) {
+        return getHeadwordIndex().regex(expression);
+    }
+
+    /** Returns the trigram index of the headwords, built the first time it is needed. */
+    private synchronized HeadwordIndex getHeadwordIndex() {
+        if (headwordIndex == null)
+            headwordIndex = new HeadwordIndex(getHeadwords());
+        return headwordIndex;
+    }
+
+    /** Reads the definitions of all headwords equal to a word, ignoring case, in the order of the index.
+     *
+     * @return A map from each matching headword to its definition texts.
+     */
+    public Map<String, List<String>> readDefinitions(String word) throws IOException {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        String key = word.toLowerCase();
+        for (int i = lowerBound(key); i < entries.size() && entries.get(i).key.equals(key); i++) {
+            Entry entry = entries.get(i);
+            List<String> texts = result.get(entry.entry.getHeadword());
+            if (texts == null)
+                result.put(entry.entry.getHeadword(), texts = new ArrayList<>());
+            texts.add(readDefinition(entry));
+        }
+        return result;
+    }
+
+    private String readDefinition(Entry entry) throws IOException {
+        byte[] bytes = entry.data.read(entry.entry.getOffset(), entry.entry.getLength());
+        int length = bytes.length;
+        while (length > 0 && (bytes[length - 1] == '\n' || bytes[length - 1] == '\r'))
+            length--;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private int lowerBound(String key) {
+        int low = 0, high = entries.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries.get(middle).key.compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (DictData data : dataFiles) {
+            try {
+                data.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        dataFiles.clear();
+        if (failure != null)
+            throw failure;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final String key;
+        private final DictdIndexEntry entry;
+        private final DictData data;
+
+        Entry(DictdIndexEntry entry, DictData data) {
+            this.key = entry.getHeadword().toLowerCase();
+            this.entry = entry;
+            this.data = data;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
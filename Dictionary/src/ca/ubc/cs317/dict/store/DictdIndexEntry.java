@@ -0,0 +1,71 @@
+package ca.ubc.cs317.dict.store;
+
+/**
+ * A line of a dictd-format .index file: a headword, and the offset and length of its definition in the matching
+ * .dict (or .dict.dz) file. Offsets and lengths are written as base-64 numbers, most significant digit first, using
+ * the alphabet A-Z a-z 0-9 + /.
+ */
+public class DictdIndexEntry {
+
+    private static final String DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private final String headword;
+    private final long offset;
+    private final int length;
+
+    public DictdIndexEntry(String headword, long offset, int length) {
+        this.headword = headword;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public String getHeadword() {
+        return headword;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /** Parses a line of an .index file.
+     *
+     * @throws IllegalArgumentException If the line is not in the expected format.
+     */
+    public static DictdIndexEntry parse(String line) {
+        String[] fields = line.split("\t");
+        if (fields.length < 3)
+            throw new IllegalArgumentException("Invalid index line: " + line);
+        return new DictdIndexEntry(fields[0], decodeNumber(fields[1]), (int) decodeNumber(fields[2]));
+    }
+
+    /** Formats the entry as a line of an .index file, without the line terminator. */
+    public String format() {
+        return headword + "\t" + encodeNumber(offset) + "\t" + encodeNumber(length);
+    }
+
+    public static String encodeNumber(long value) {
+        if (value == 0)
+            return "A";
+        StringBuilder digits = new StringBuilder();
+        while (value > 0) {
+            digits.append(DIGITS.charAt((int) (value & 63)));
+            value >>>= 6;
+        }
+        return digits.reverse().toString();
+    }
+
+    public static long decodeNumber(String digits) {
+        long value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            int digit = DIGITS.indexOf(digits.charAt(i));
+            if (digit < 0)
+                throw new IllegalArgumentException("Invalid base-64 number: " + digits);
+            value = value * 64 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,154 @@
+package ca.ubc.cs317.dict.store;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Databases available on local disk, used to answer DEFINE and MATCH queries without contacting the server. The
+ * databases are either a directory written by the mirroring tool, of which only completely mirrored databases are
+ * used, or a directory of dictd files as distributed with dictd (name.index with name.dict.dz or name.dict), where
+ * each pair of files is a database with the name of the files.
+ *
+ * Exact, prefix, substring and regular expression (re) matches are answered locally, the last two through a trigram
+ * index of the headwords built the first time it is needed. Other strategies are left to the server.
+ */
+public class LocalDictionary implements Closeable {
+
+    private final Map<String, DictdDatabase> databases = new TreeMap<>();
+
+    private LocalDictionary() {
+    }
+
+    /** Opens the databases in a directory.
+     *
+     * @throws IOException If a database can't be read.
+     */
+    public static LocalDictionary open(Path directory) throws IOException {
+        LocalDictionary dictionary = new LocalDictionary();
+        try {
+            if (Files.exists(directory.resolve("mirror.properties"))) {
+                MirrorStore store = new MirrorStore(directory);
+                for (String database : store.getDatabases()) {
+                    // A partial copy would report missing definitions for the headwords of the missing shards
+                    if (!store.isComplete(database))
+                        continue;
+                    List<Path> indexFiles = indexFiles(store.databaseDirectory(database));
+                    if (!indexFiles.isEmpty())
+                        dictionary.databases.put(database, new DictdDatabase(indexFiles));
+                }
+            } else {
+                for (Path indexFile : indexFiles(directory)) {
+                    String name = indexFile.getFileName().toString();
+                    dictionary.databases.put(name.substring(0, name.length() - ".index".length()),
+                            new DictdDatabase(Collections.singletonList(indexFile)));
+                }
+            }
+        } catch (IOException e) {
+            dictionary.close();
+            throw e;
+        }
+        return dictionary;
+    }
+
+    private static List<Path> indexFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+            return files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.index")) {
+            for (Path file : stream)
+                files.add(file);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /** Names of the databases available locally. */
+    public Set<String> getDatabaseNames() {
+        return Collections.unmodifiableSet(databases.keySet());
+    }
+
+    /** Checks whether definitions from a database can be retrieved locally. The special databases '*' and '!' are
+     * never answered locally, since the local copy may not include every database of the server. */
+    public boolean canAnswer(Database database) {
+        return databases.containsKey(database.getName());
+    }
+
+    /** Checks whether matches from a database with a strategy can be retrieved locally. */
+    public boolean canAnswer(MatchingStrategy strategy, Database database) {
+        if (!canAnswer(database))
+            return false;
+        switch (strategy.getName()) {
+            case "exact":
+            case "prefix":
+            case "substring":
+            case "re":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Retrieves all definitions for a word in a database.
+     *
+     * @param word The word whose definition is to be retrieved.
+     * @param database The database, which must be one that canAnswer returns true for.
+     * @return A collection of Definition objects, possibly empty.
+     * @throws IOException If a data file can't be read.
+     */
+    public Collection<Definition> getDefinitions(String word, Database database) throws IOException {
+        Collection<Definition> definitions = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : database(database).readDefinitions(word).entrySet()) {
+            for (String text : entry.getValue()) {
+                Definition definition = new Definition(entry.getKey(), database);
+                definition.setDefinition(text);
+                definitions.add(definition);
+            }
+        }
+        return definitions;
+    }
+
+    /** Retrieves the headwords of a database that match a word.
+     *
+     * @param strategy The strategy, which must be one that canAnswer returns true for.
+     * @return A set of headwords, possibly empty.
+     * @throws IllegalArgumentException If the strategy is not available locally, or the word is not a POSIX regular
+     * expression that can be matched locally for the re strategy.
+     */
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) {
+        DictdDatabase local = database(database);
+        switch (strategy.getName()) {
+            case "exact":
+                return local.findExact(word);
+            case "prefix":
+                return local.findPrefix(word);
+            case "substring":
+                return local.findSubstring(word);
+            case "re":
+                return local.findRegex(word);
+            default:
+                throw new IllegalArgumentException("Strategy not available locally: " + strategy.getName());
+        }
+    }
+
+    private DictdDatabase database(Database database) {
+        DictdDatabase local = databases.get(database.getName());
+        if (local == null)
+            throw new IllegalArgumentException("Database not available locally: " + database.getName());
+        return local;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DictdDatabase database : databases.values())
+            database.close();
+        databases.clear();
+    }
+}
@@ -0,0 +1,198 @@
+package ca.ubc.cs317.dict.store;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Local copy of the databases of a DICT server, written by the mirroring tool. Each database is a directory holding
+ * one pair of dictd-format files (shard.index and a dictzip-compressed shard.dict.dz) per shard of its headword
+ * space, so a shard can be replaced without touching the rest of the database.
+ *
+ * A manifest (mirror.properties) records, for each database, its description and a fingerprint of its SHOW INFO text,
+ * and for each completed shard a checksum of its headword list. The manifest is saved after every shard, so an
+ * interrupted mirror resumes with the shards that were not completed.
+ */
+public class MirrorStore {
+
+    /** Shard of the headwords that don't start with a letter or digit. */
+    public static final String OTHER_SHARD = "_other";
+
+    private static final String MANIFEST = "mirror.properties";
+
+    private final Path root;
+    private final Properties manifest = new Properties();
+
+    public MirrorStore(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root);
+        Path manifestPath = root.resolve(MANIFEST);
+        if (Files.exists(manifestPath)) {
+            try (Reader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+                manifest.load(reader);
+            }
+        }
+    }
+
+    /** Names of the shards of every database: one per leading letter or digit, plus OTHER_SHARD. */
+    public static List<String> getShardNames() {
+        List<String> shards = new ArrayList<>();
+        for (char c = 'a'; c <= 'z'; c++)
+            shards.add(String.valueOf(c));
+        for (char c = '0'; c <= '9'; c++)
+            shards.add(String.valueOf(c));
+        shards.add(OTHER_SHARD);
+        return shards;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /** Names of the databases in the store, in alphabetical order. */
+    public synchronized List<String> getDatabases() {
+        List<String> databases = new ArrayList<>();
+        for (String key : manifest.stringPropertyNames())
+            if (key.startsWith("database.") && key.endsWith(".description"))
+                databases.add(key.substring("database.".length(), key.length() - ".description".length()));
+        Collections.sort(databases);
+        return databases;
+    }
+
+    public synchronized String getDescription(String database) {
+        return manifest.getProperty("database." + database + ".description");
+    }
+
+    public synchronized String getFingerprint(String database) {
+        return manifest.getProperty("database." + database + ".fingerprint");
+    }
+
+    /** Records a database and its fingerprint. If the fingerprint changed, every shard of the database is marked as
+     * incomplete so it is downloaded again.
+     *
+     * @return true if the database is new or its fingerprint changed.
+     */
+    public synchronized boolean updateDatabase(String database, String description, String fingerprint)
+            throws IOException {
+        boolean changed = !fingerprint.equals(getFingerprint(database)) ||
+                !description.equals(getDescription(database));
+        if (changed) {
+            String shardPrefix = "shard." + database + ".";
+            for (String key : manifest.stringPropertyNames())
+                if (key.startsWith(shardPrefix))
+                    manifest.remove(key);
+        }
+        manifest.setProperty("database." + database + ".description", description);
+        manifest.setProperty("database." + database + ".fingerprint", fingerprint);
+        save();
+        return changed;
+    }
+
+    /** Deletes a database that no longer exists on the server. */
+    public synchronized void removeDatabase(String database) throws IOException {
+        for (String key : manifest.stringPropertyNames())
+            if (key.startsWith("database." + database + ".") || key.startsWith("shard." + database + "."))
+                manifest.remove(key);
+        save();
+        Path directory = databaseDirectory(database);
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /** Checks whether a shard was completely downloaded with the same headword checksum. */
+    public synchronized boolean isShardCurrent(String database, String shard, String checksum) {
+        return checksum.equals(manifest.getProperty("shard." + database + "." + shard));
+    }
+
+    /** Names of the shards of a database that were completely downloaded. */
+    public synchronized List<String> getShards(String database) {
+        List<String> shards = new ArrayList<>();
+        String prefix = "shard." + database + ".";
+        for (String key : manifest.stringPropertyNames())
+            if (key.startsWith(prefix))
+                shards.add(key.substring(prefix.length()));
+        Collections.sort(shards);
+        return shards;
+    }
+
+    /** Checks whether every shard of a database was completely downloaded, so the local copy has all its headwords. */
+    public synchronized boolean isComplete(String database) {
+        return getShards(database).containsAll(getShardNames());
+    }
+
+    /** Replaces the files of a shard with the given definitions, and records the shard as complete.
+     *
+     * @param checksum Checksum of the shard's headword list, used to detect changes in later synchronizations.
+     */
+    public void writeShard(String database, String shard, Collection<Definition> definitions, String checksum)
+            throws IOException {
+        List<Definition> sorted = new ArrayList<>(definitions);
+        Collections.sort(sorted, new Comparator<Definition>() {
+            @Override
+            public int compare(Definition a, Definition b) {
+                return a.getWord().compareToIgnoreCase(b.getWord());
+            }
+        });
+        Path directory = databaseDirectory(database);
+        Files.createDirectories(directory);
+        Path dictFile = directory.resolve(shard + ".dict.dz");
+        Path indexFile = directory.resolve(shard + ".index");
+        if (sorted.isEmpty()) {
+            // Most shards of small databases are empty; don't leave empty files behind for them
+            Files.deleteIfExists(dictFile);
+            Files.deleteIfExists(indexFile);
+        } else {
+            writeFiles(sorted, directory, shard, dictFile, indexFile);
+        }
+        // Shards written before the data files were compressed
+        Files.deleteIfExists(directory.resolve(shard + ".dict"));
+        synchronized (this) {
+            manifest.setProperty("shard." + database + "." + shard, checksum);
+            save();
+        }
+    }
+
+    private static void writeFiles(List<Definition> sorted, Path directory, String shard, Path dictFile,
+                                   Path indexFile) throws IOException {
+        Path dictTemporary = directory.resolve(shard + ".dict.tmp");
+        Path indexTemporary = directory.resolve(shard + ".index.tmp");
+        try (OutputStream dict = new BufferedOutputStream(Files.newOutputStream(dictTemporary));
+             BufferedWriter index = Files.newBufferedWriter(indexTemporary, StandardCharsets.UTF_8)) {
+            long offset = 0;
+            for (Definition definition : sorted) {
+                byte[] body = ((definition.getDefinition() == null ? "" : definition.getDefinition()) + "\n")
+                        .getBytes(StandardCharsets.UTF_8);
+                dict.write(body);
+                index.write(new DictdIndexEntry(definition.getWord(), offset, body.length).format());
+                index.write('\n');
+                offset += body.length;
+            }
+        }
+        try {
+            DictZipWriter.compress(dictTemporary, dictFile);
+        } finally {
+            Files.deleteIfExists(dictTemporary);
+        }
+        Files.move(indexTemporary, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public Path databaseDirectory(String database) {
+        return root.resolve(database.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+    private void save() throws IOException {
+        Path temporary = root.resolve(MANIFEST + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            manifest.store(writer, "DICT mirror manifest");
+        }
+        Files.move(temporary, root.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,248 @@
+package ca.ubc.cs317.dict.tools;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.index.InvertedIndex;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.store.MirrorStore;
+import ca.ubc.cs317.dict.util.RateLimiter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Copies the databases of a DICT server into a MirrorStore using only MATCH and DEFINE. The headwords of each
+ * database are enumerated by shard (one prefix MATCH per leading letter or digit, plus a regular expression MATCH for
+ * headwords starting with anything else), and the shards are spread over a pool of connections. Definitions are
+ * fetched with pipelined DEFINE commands.
+ *
+ * Running the mirror again only downloads what changed: a database whose SHOW INFO text or description changed is
+ * downloaded again, and otherwise a shard is skipped if its headword list has the same checksum as last time. Shards
+ * interrupted half-way are not recorded as complete, so they are downloaded again on the next run.
+ */
+public class DictionaryMirror {
+
+    private static final MatchingStrategy PREFIX = new MatchingStrategy("prefix", "");
+    private static final MatchingStrategy REGEX = new MatchingStrategy("re", "");
+
+    private final DictionaryConnectionPool pool;
+    private final MirrorStore store;
+    private final RateLimiter rateLimiter;
+    private final int pipelineWindow;
+    private final AtomicInteger shardsDownloaded = new AtomicInteger();
+    private final AtomicInteger shardsSkipped = new AtomicInteger();
+    private final AtomicInteger shardsFailed = new AtomicInteger();
+    private InvertedIndex index;
+
+    /**
+     * @param pool              Connections to the server to be mirrored; one shard is downloaded per connection at a time.
+     * @param store             Local store receiving the databases.
+     * @param commandsPerSecond Maximum rate of commands sent to the server, over all connections.
+     * @param pipelineWindow    Maximum number of DEFINE commands sent ahead of their replies on each connection.
+     */
+    public DictionaryMirror(DictionaryConnectionPool pool, MirrorStore store, double commandsPerSecond,
+                            int pipelineWindow) {
+        this.pool = pool;
+        this.store = store;
+        this.rateLimiter = new RateLimiter(commandsPerSecond, pipelineWindow);
+        this.pipelineWindow = pipelineWindow;
+    }
+
+    /** Also adds every definition downloaded to a full-text index, so the mirror can be searched by content. */
+    public void setIndex(InvertedIndex index) {
+        this.index = index;
+    }
+
+    /** Mirrors the given databases, or every database of the server if none is given, blocking until done.
+     *
+     * @param databaseNames Names of the databases to be mirrored, or an empty collection for all of them.
+     * @return true if every shard was mirrored successfully.
+     */
+    public boolean mirror(Collection<String> databaseNames) throws DictConnectionException, IOException,
+            InterruptedException {
+        List<Database> databases = new ArrayList<>();
+        Map<Database, String> fingerprints = new HashMap<>();
+        DictionaryConnection connection = pool.acquire();
+        try {
+            for (Database database : connection.getDatabaseList()) {
+                if (databaseNames.isEmpty() || databaseNames.contains(database.getName())) {
+                    databases.add(database);
+                    rateLimiter.acquire(1);
+                    fingerprints.put(database, fingerprint(connection, database));
+                }
+            }
+            pool.release(connection);
+        } catch (DictConnectionException e) {
+            pool.discard(connection);
+            throw e;
+        }
+
+        if (databaseNames.isEmpty()) {
+            Set<String> current = new HashSet<>();
+            for (Database database : databases)
+                current.add(database.getName());
+            for (String name : store.getDatabases()) {
+                if (!current.contains(name)) {
+                    System.out.println("Removing " + name + ", which is no longer on the server");
+                    store.removeDatabase(name);
+                }
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(pool.getMaxConnections());
+        List<Future<?>> futures = new ArrayList<>();
+        for (final Database database : databases) {
+            if (fingerprints.get(database) == null) {
+                // Without a fingerprint, a changed database can't be told from an unchanged one, so it is left as it
+                // is for the next run to retry
+                shardsFailed.addAndGet(MirrorStore.getShardNames().size());
+                continue;
+            }
+            if (store.updateDatabase(database.getName(), database.getDescription(), fingerprints.get(database)))
+                System.out.println("Database " + database.getName() + " is new or changed");
+            for (final String shard : MirrorStore.getShardNames()) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        mirrorShard(database, shard);
+                        return null;
+                    }
+                }));
+            }
+        }
+        executor.shutdown();
+        try {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // Already reported by mirrorShard
+                }
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+        System.out.println("Shards downloaded: " + shardsDownloaded + ", unchanged: " + shardsSkipped +
+                ", failed: " + shardsFailed);
+        return shardsFailed.get() == 0;
+    }
+
+    private void mirrorShard(Database database, String shard) throws Exception {
+        DictionaryConnection connection = pool.acquire();
+        try {
+            rateLimiter.acquire(1);
+            // DEFINE ignores case, so headwords differing only in case would be downloaded twice
+            Set<String> distinct = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            distinct.addAll(enumerate(connection, database, shard));
+            List<String> headwords = new ArrayList<>(distinct);
+            String checksum = checksum(headwords);
+            if (store.isShardCurrent(database.getName(), shard, checksum)) {
+                shardsSkipped.incrementAndGet();
+                pool.release(connection);
+                return;
+            }
+            List<Definition> definitions = new ArrayList<>();
+            for (int start = 0; start < headwords.size(); start += pipelineWindow) {
+                List<String> batch = headwords.subList(start, Math.min(headwords.size(), start + pipelineWindow));
+                rateLimiter.acquire(batch.size());
+                for (Collection<Definition> found : connection.getDefinitions(batch, database, pipelineWindow).values())
+                    definitions.addAll(found);
+            }
+            store.writeShard(database.getName(), shard, definitions, checksum);
+            if (index != null)
+                index.addAll(definitions);
+            shardsDownloaded.incrementAndGet();
+            System.out.println("Mirrored " + database.getName() + "/" + shard + ": " + headwords.size() +
+                    " headwords");
+            pool.release(connection);
+        } catch (Exception e) {
+            pool.discard(connection);
+            shardsFailed.incrementAndGet();
+            System.out.println("Could not mirror " + database.getName() + "/" + shard + ": " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private Set<String> enumerate(DictionaryConnection connection, Database database, String shard)
+            throws DictConnectionException {
+        if (!shard.equals(MirrorStore.OTHER_SHARD))
+            return connection.getMatchList(shard, PREFIX, database);
+        try {
+            return connection.getMatchList("^[^a-z0-9]", REGEX, database);
+        } catch (DictConnectionException e) {
+            // Servers without the "re" strategy (551) can't enumerate these headwords
+            return Collections.emptySet();
+        }
+    }
+
+    /** Returns a checksum of the SHOW INFO text of a database, or null if the server didn't provide it.
+     *
+     * @throws DictConnectionException If the connection can't be used any more.
+     */
+    private static String fingerprint(DictionaryConnection connection, Database database)
+            throws DictConnectionException {
+        try {
+            return checksum(Collections.singletonList(connection.getDatabaseInfo(database)));
+        } catch (DictConnectionException e) {
+            if (connection.isBroken())
+                throw e;
+            System.out.println("Could not get the information of " + database.getName() + ", so it is not mirrored: "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String checksum(List<String> lines) {
+        CRC32 crc = new CRC32();
+        for (String line : lines) {
+            crc.update(line.getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        return lines.size() + "-" + Long.toHexString(crc.getValue());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2)
+            options.put(args[i], args[i + 1]);
+        if (!options.containsKey("--host") || !options.containsKey("--output")) {
+            System.out.println("Usage: DictionaryMirror --host host[:port] --output directory\n" +
+                    "  [--databases name,name,...] [--connections n (default 4)]\n" +
+                    "  [--rate commands/s (default 20)] [--pipeline n (default 16)] [--index directory]");
+            System.exit(1);
+        }
+        String host = options.get("--host");
+        int port = DictionaryConnection.DEFAULT_PORT;
+        if (host.contains(":")) {
+            port = Integer.parseInt(host.substring(host.indexOf(':') + 1));
+            host = host.substring(0, host.indexOf(':'));
+        }
+        List<String> databases = new ArrayList<>();
+        if (options.containsKey("--databases"))
+            databases.addAll(Arrays.asList(options.get("--databases").split(",")));
+        DictionaryConnectionPool pool = new DictionaryConnectionPool(host, port,
+                Integer.parseInt(options.containsKey("--connections") ? options.get("--connections") : "4"));
+        DictionaryMirror mirror = new DictionaryMirror(pool, new MirrorStore(Paths.get(options.get("--output"))),
+                Double.parseDouble(options.containsKey("--rate") ? options.get("--rate") : "20"),
+                Integer.parseInt(options.containsKey("--pipeline") ? options.get("--pipeline") : "16"));
+        InvertedIndex index = null;
+        if (options.containsKey("--index")) {
+            index = InvertedIndex.open(Paths.get(options.get("--index")));
+            mirror.setIndex(index);
+        }
+        boolean complete = mirror.mirror(databases);
+        pool.close();
+        if (index != null)
+            index.close();
+        System.exit(complete ? 0 : 2);
+    }
+}
@@ -0,0 +1,355 @@
+package ca.ubc.cs317.dict.tools;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.net.NegativeCache;
+import ca.ubc.cs317.dict.net.RequestScheduler;
+import ca.ubc.cs317.dict.util.BloomFilter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Defines every word of a text, however large, in a single pass. The text is streamed through three stages:
+ * <ol>
+ *     <li>A tokenizer, which reads the text a buffer at a time and yields its words in lower case.</li>
+ *     <li>A deduplicator, which lets each word through once. Words seen are kept in a hash set until there are
+ *     maxExactWords of them, and in a Bloom filter of fixed size after that, so memory doesn't grow with the text. A
+ *     Bloom filter false positive means a (rare) word is left out of the glossary.</li>
+ *     <li>A lookup stage, which answers words from the pool's caches when it can and otherwise sends them in batches
+ *     of pipelined DEFINE commands, with a bounded number of batches in flight over the pool's connections. The
+ *     tokenizer waits while that many batches are in flight, so the text is never read far ahead of the lookups.</li>
+ * </ol>
+ * Entries are handed to a listener as soon as each word's lookup completes, not in text order.
+ */
+public class GlossaryBuilder {
+
+    /** Receives the glossary, one word at a time. Calls are never concurrent, but come from several threads. */
+    public interface Listener {
+        /**
+         * @param word        A word of the text, in lower case.
+         * @param definitions Its definitions; empty if the server has none.
+         */
+        void entryReady(String word, Collection<Definition> definitions);
+
+        /** Called for each word whose definitions could not be retrieved. */
+        void lookupFailed(String word, DictConnectionException cause);
+    }
+
+    public static final int MIN_WORD_LENGTH = 2;
+    /** Longer runs of letters are not words anyone can look up (and are not buffered). */
+    public static final int MAX_WORD_LENGTH = 64;
+    public static final int BATCH_SIZE = 16;
+    public static final int DEFAULT_MAX_EXACT_WORDS = 500000;
+    public static final long BLOOM_FILTER_WORDS = 10000000;
+    public static final double BLOOM_FILTER_FALSE_POSITIVE_RATE = 0.001;
+
+    private final RequestScheduler scheduler;
+    private final Database database;
+    private final int maxBatchesInFlight;
+    private RequestScheduler.Priority priority = RequestScheduler.Priority.BULK;
+    private int maxExactWords = DEFAULT_MAX_EXACT_WORDS;
+
+    private final AtomicLong wordsRead = new AtomicLong();
+    private final AtomicLong uniqueWords = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong wordsLookedUp = new AtomicLong();
+    private final AtomicLong wordsDefined = new AtomicLong();
+    private final AtomicLong wordsFailed = new AtomicLong();
+
+    /**
+     * @param scheduler Scheduler of the pool the words are looked up with. One batch is in flight per connection of
+     *                  the pool, plus as many waiting for a connection.
+     * @param database  Database the words are defined in, including the special databases '*' and '!'.
+     */
+    public GlossaryBuilder(RequestScheduler scheduler, Database database) {
+        this.scheduler = scheduler;
+        this.database = database;
+        this.maxBatchesInFlight = Math.min(RequestScheduler.MAX_QUEUED_BACKGROUND,
+                2 * scheduler.getPool().getMaxConnections());
+    }
+
+    /** Sets the priority of the lookups; BULK by default, so other users of the pool come first. */
+    public void setPriority(RequestScheduler.Priority priority) {
+        this.priority = priority;
+    }
+
+    /** Sets the number of distinct words remembered exactly, before switching to a Bloom filter. */
+    public void setMaxExactWords(int maxExactWords) {
+        this.maxExactWords = maxExactWords;
+    }
+
+    /** Reads a text to the end and defines each of its words once, blocking until every lookup has completed.
+     *
+     * @param text     The text. It is read, but not closed.
+     * @param listener Receives each entry as soon as it is ready.
+     * @throws IOException If the text can't be read.
+     * @throws InterruptedException If the thread is interrupted; lookups in progress are abandoned.
+     */
+    public void build(Reader text, final Listener listener) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(maxBatchesInFlight, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "glossary-lookup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Semaphore batchesInFlight = new Semaphore(maxBatchesInFlight);
+        Deduplicator deduplicator = new Deduplicator(maxExactWords);
+        NegativeCache negativeCache = scheduler.getPool().getNegativeCache();
+        try {
+            WordReader words = new WordReader(text);
+            List<String> batch = new ArrayList<>();
+            String word;
+            while ((word = words.next()) != null) {
+                wordsRead.incrementAndGet();
+                if (!deduplicator.add(word))
+                    continue;
+                uniqueWords.incrementAndGet();
+                // Answer from the caches without taking a connection, or a place in the batch
+                Collection<Definition> definitions =
+                        negativeCache.isKnownMiss(NegativeCache.DEFINE, database.getName(), word) ?
+                                Collections.<Definition>emptyList() :
+                                scheduler.getPool().getResponseCache().getDefinitions(database.getName(), word);
+                if (definitions != null) {
+                    cacheHits.incrementAndGet();
+                    deliver(listener, Collections.singletonMap(word, definitions));
+                    continue;
+                }
+                batch.add(word);
+                if (batch.size() == BATCH_SIZE) {
+                    submit(executor, batchesInFlight, batch, listener);
+                    batch = new ArrayList<>();
+                }
+            }
+            if (!batch.isEmpty())
+                submit(executor, batchesInFlight, batch, listener);
+            // Every batch has completed once all permits are back
+            batchesInFlight.acquire(maxBatchesInFlight);
+            batchesInFlight.release(maxBatchesInFlight);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submit(ExecutorService executor, final Semaphore batchesInFlight, final List<String> batch,
+                        final Listener listener) throws InterruptedException {
+        batchesInFlight.acquire();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Map<String, Collection<Definition>> result = scheduler.execute(priority,
+                            new RequestScheduler.Request<Map<String, Collection<Definition>>>() {
+                                @Override
+                                public Map<String, Collection<Definition>> execute(DictionaryConnection connection)
+                                        throws DictConnectionException {
+                                    return connection.getDefinitions(batch, database, BATCH_SIZE);
+                                }
+                            });
+                    wordsLookedUp.addAndGet(batch.size());
+                    deliver(listener, result);
+                } catch (DictConnectionException e) {
+                    wordsFailed.addAndGet(batch.size());
+                    synchronized (listener) {
+                        for (String word : batch)
+                            listener.lookupFailed(word, e);
+                    }
+                } finally {
+                    batchesInFlight.release();
+                }
+            }
+        });
+    }
+
+    private void deliver(Listener listener, Map<String, Collection<Definition>> entries) {
+        synchronized (listener) {
+            for (Map.Entry<String, Collection<Definition>> entry : entries.entrySet()) {
+                if (!entry.getValue().isEmpty())
+                    wordsDefined.incrementAndGet();
+                listener.entryReady(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public long getWordsRead() {
+        return wordsRead.get();
+    }
+
+    public long getUniqueWords() {
+        return uniqueWords.get();
+    }
+
+    /** Number of distinct words answered from the caches, without a request. */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /** Number of distinct words sent to the server (or a local database). */
+    public long getWordsLookedUp() {
+        return wordsLookedUp.get();
+    }
+
+    /** Number of distinct words with at least one definition. */
+    public long getWordsDefined() {
+        return wordsDefined.get();
+    }
+
+    public long getWordsFailed() {
+        return wordsFailed.get();
+    }
+
+    /** Splits a stream of text into lower-case words (runs of letters), reading a buffer at a time. */
+    static class WordReader {
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private int length = 0;
+        private int position = 0;
+        private final StringBuilder word = new StringBuilder(MAX_WORD_LENGTH);
+
+        WordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /** Returns the next word, or null at the end of the text. */
+        String next() throws IOException {
+            boolean tooLong = false;
+            while (true) {
+                if (position == length) {
+                    length = reader.read(buffer);
+                    position = 0;
+                    if (length < 0) {
+                        length = 0;
+                        String last = take(tooLong);
+                        if (last != null)
+                            return last;
+                        return null;
+                    }
+                }
+                char c = buffer[position++];
+                if (Character.isLetter(c)) {
+                    if (word.length() < MAX_WORD_LENGTH)
+                        word.append(Character.toLowerCase(c));
+                    else
+                        tooLong = true;
+                } else if (word.length() > 0 || tooLong) {
+                    String result = take(tooLong);
+                    tooLong = false;
+                    if (result != null)
+                        return result;
+                }
+            }
+        }
+
+        private String take(boolean tooLong) {
+            String result = !tooLong && word.length() >= MIN_WORD_LENGTH ? word.toString() : null;
+            word.setLength(0);
+            return result;
+        }
+    }
+
+    /** Remembers words seen, exactly up to a number of words and approximately after that. */
+    static class Deduplicator {
+        private final int maxExactWords;
+        private Set<String> exact = new HashSet<>();
+        private BloomFilter filter;
+
+        Deduplicator(int maxExactWords) {
+            this.maxExactWords = maxExactWords;
+        }
+
+        /** Records a word, returning true if it was not seen before. */
+        boolean add(String word) {
+            if (filter != null)
+                return filter.add(word);
+            if (!exact.add(word))
+                return false;
+            if (exact.size() > maxExactWords) {
+                filter = new BloomFilter(BLOOM_FILTER_WORDS, BLOOM_FILTER_FALSE_POSITIVE_RATE);
+                for (String seen : exact)
+                    filter.add(seen);
+                exact = null;
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2)
+            options.put(args[i], args[i + 1]);
+        if (!options.containsKey("--host")) {
+            System.out.println("Usage: GlossaryBuilder --host host[:port]\n" +
+                    "  [--input file (default: standard input)] [--output file (default: standard output)]\n" +
+                    "  [--database name (default *)] [--connections n (default 4)] [--missing true|false]");
+            System.exit(1);
+        }
+        String host = options.get("--host");
+        int port = DictionaryConnection.DEFAULT_PORT;
+        if (host.contains(":")) {
+            port = Integer.parseInt(host.substring(host.indexOf(':') + 1));
+            host = host.substring(0, host.indexOf(':'));
+        }
+        DictionaryConnectionPool pool = new DictionaryConnectionPool(host, port,
+                Integer.parseInt(options.containsKey("--connections") ? options.get("--connections") : "4"));
+        RequestScheduler scheduler = new RequestScheduler(pool);
+        GlossaryBuilder builder = new GlossaryBuilder(scheduler,
+                new Database(options.containsKey("--database") ? options.get("--database") : "*", ""));
+        // Nothing else uses this pool, and someone is waiting for the glossary
+        builder.setPriority(RequestScheduler.Priority.INTERACTIVE);
+        final boolean listMissing = Boolean.parseBoolean(options.get("--missing"));
+
+        Reader input = options.containsKey("--input") ?
+                Files.newBufferedReader(Paths.get(options.get("--input")), StandardCharsets.UTF_8) :
+                new InputStreamReader(System.in, StandardCharsets.UTF_8);
+        final PrintWriter output = new PrintWriter(new BufferedWriter(options.containsKey("--output") ?
+                Files.newBufferedWriter(Paths.get(options.get("--output")), StandardCharsets.UTF_8) :
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        // The connection reports some replies on standard output, which may be where the glossary goes
+        System.setOut(System.err);
+        long start = System.nanoTime();
+        try {
+            builder.build(input, new Listener() {
+                @Override
+                public void entryReady(String word, Collection<Definition> definitions) {
+                    if (definitions.isEmpty()) {
+                        if (listMissing)
+                            output.println(word + "\n    (no definition)\n");
+                        return;
+                    }
+                    output.println(word);
+                    for (Definition definition : definitions) {
+                        output.println("    [" + definition.getDatabase() + "]");
+                        for (String line : definition.getDefinition().split("\n"))
+                            output.println("    " + line);
+                    }
+                    output.println();
+                }
+
+                @Override
+                public void lookupFailed(String word, DictConnectionException cause) {
+                    System.err.println("Could not define " + word + ": " + cause.getMessage());
+                }
+            });
+        } finally {
+            output.flush();
+            input.close();
+            scheduler.close();
+        }
+        System.err.println(String.format("%d words, %d distinct: %d from the cache, %d looked up, %d defined, " +
+                        "%d failed in %.1f s", builder.getWordsRead(), builder.getUniqueWords(),
+                builder.getCacheHits(), builder.getWordsLookedUp(), builder.getWordsDefined(),
+                builder.getWordsFailed(), (System.nanoTime() - start) / 1e9));
+        output.close();
+        System.exit(builder.getWordsFailed() == 0 ? 0 : 2);
+    }
+}
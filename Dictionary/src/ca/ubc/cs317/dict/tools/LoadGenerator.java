@@ -0,0 +1,384 @@
+package ca.ubc.cs317.dict.tools;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.net.NegativeCache;
+import ca.ubc.cs317.dict.net.ResponseCache;
+import ca.ubc.cs317.dict.server.FixtureCorpus;
+import ca.ubc.cs317.dict.server.ServerBehaviour;
+import ca.ubc.cs317.dict.server.StandInDictServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a trace of words against a DICT server at a configurable concurrency, and reports throughput and latency
+ * percentiles. Each worker thread owns one Client; clients are created by a ClientFactory so any client
+ * implementation (a single connection, a pool, ...) can be measured the same way.
+ *
+ * When a target rate is given, requests are issued on a fixed schedule and latency is measured from the time each
+ * request was due, so a slow server is not hidden by workers that simply send less.
+ */
+public class LoadGenerator {
+
+    /** A client under test, used by a single worker thread. */
+    public interface Client {
+        void lookup(String word) throws DictConnectionException;
+
+        void close();
+    }
+
+    public interface ClientFactory {
+        Client create() throws DictConnectionException;
+    }
+
+    private final List<String> trace;
+    private final ClientFactory factory;
+    private int concurrency = 1;
+    private long maxRequests = 0;
+    private long durationMillis = 0;
+    private double requestsPerSecond = 0;
+
+    public LoadGenerator(List<String> trace, ClientFactory factory) {
+        if (trace.isEmpty())
+            throw new IllegalArgumentException("The trace has no words");
+        this.trace = trace;
+        this.factory = factory;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    /** Stops after this many requests in total. Zero means one pass over the trace, unless a duration is set. */
+    public void setMaxRequests(long maxRequests) {
+        this.maxRequests = maxRequests;
+    }
+
+    /** Stops after this much time has passed. Zero means no time limit. */
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /** Issues requests at this aggregate rate instead of as fast as the workers can. Zero means unpaced. */
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /** Runs the load test, blocking until it completes.
+     *
+     * @return The measurements of all requests issued.
+     * @throws DictConnectionException If a client could not be created.
+     */
+    public Report run() throws DictConnectionException {
+        final long limit = maxRequests > 0 ? maxRequests : (durationMillis > 0 ? Long.MAX_VALUE : trace.size());
+        final AtomicLong sequence = new AtomicLong();
+        final long start = System.nanoTime();
+        final long end = durationMillis > 0 ? start + durationMillis * 1000000L : Long.MAX_VALUE;
+        final CountDownLatch finished = new CountDownLatch(concurrency);
+        final Report report = new Report();
+
+        List<Client> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < concurrency; i++)
+                clients.add(factory.create());
+        } catch (DictConnectionException e) {
+            for (Client client : clients)
+                client.close();
+            throw e;
+        }
+
+        for (final Client client : clients) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long n;
+                        while ((n = sequence.getAndIncrement()) < limit) {
+                            long due = requestsPerSecond > 0 ? start + (long) (n * 1e9 / requestsPerSecond) :
+                                    System.nanoTime();
+                            if (due >= end)
+                                break;
+                            long wait = due - System.nanoTime();
+                            if (wait > 0)
+                                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                            boolean success = true;
+                            try {
+                                client.lookup(trace.get((int) (n % trace.size())));
+                            } catch (DictConnectionException e) {
+                                success = false;
+                            }
+                            report.record(System.nanoTime() - due, success);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        client.close();
+                        finished.countDown();
+                    }
+                }
+            }, "load-generator");
+            worker.start();
+        }
+
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /** Latency and throughput measurements of a load test run. */
+    public static class Report {
+        private long[] latencies = new long[1024];
+        private int count = 0;
+        private long errors = 0;
+        private long elapsedNanos;
+
+        private synchronized void record(long latencyNanos, boolean success) {
+            if (count == latencies.length)
+                latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = latencyNanos;
+            if (!success)
+                errors++;
+        }
+
+        public synchronized int getRequests() {
+            return count;
+        }
+
+        public synchronized long getErrors() {
+            return errors;
+        }
+
+        public synchronized double getThroughput() {
+            return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+        }
+
+        /** Returns the latency below which the given fraction (e.g., 0.99) of the requests completed, in millis. */
+        public synchronized double getPercentileMillis(double fraction) {
+            if (count == 0)
+                return 0;
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(count - 1, Math.max(0, Math.ceil(fraction * count) - 1));
+            return sorted[index] / 1e6;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("requests=%d errors=%d elapsed=%.1fs throughput=%.1f req/s%n" +
+                            "latency ms: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f",
+                    count, errors, elapsedNanos / 1e9, getThroughput(),
+                    getPercentileMillis(0.5), getPercentileMillis(0.9), getPercentileMillis(0.99),
+                    getPercentileMillis(0.999), getPercentileMillis(1));
+        }
+    }
+
+    /** A client with its own connection. Caches are turned off, so every lookup reaches the server, and a connection
+     * that fails is replaced before the next lookup, so one failure doesn't turn every later lookup into an error.
+     */
+    private abstract static class ConnectionClient implements Client {
+        private final String host;
+        private final int port;
+        private DictionaryConnection connection;
+
+        ConnectionClient(String host, int port) throws DictConnectionException {
+            this.host = host;
+            this.port = port;
+            this.connection = connect();
+        }
+
+        private DictionaryConnection connect() throws DictConnectionException {
+            DictionaryConnection connection = new DictionaryConnection(host, port);
+            connection.setNegativeCache(new NegativeCache(0, 0));
+            connection.setResponseCache(new ResponseCache(0, 0));
+            return connection;
+        }
+
+        protected abstract void lookup(DictionaryConnection connection, String word) throws DictConnectionException;
+
+        @Override
+        public void lookup(String word) throws DictConnectionException {
+            if (connection == null)
+                connection = connect();
+            try {
+                lookup(connection, word);
+            } catch (DictConnectionException e) {
+                connection.disconnect();
+                connection = null;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (connection != null)
+                connection.disconnect();
+        }
+    }
+
+    /** A client with its own connection, issuing MATCH commands. */
+    public static ClientFactory matchClients(final String host, final int port, final MatchingStrategy strategy,
+                                             final Database database) {
+        return new ClientFactory() {
+            @Override
+            public Client create() throws DictConnectionException {
+                return new ConnectionClient(host, port) {
+                    @Override
+                    protected void lookup(DictionaryConnection connection, String word)
+                            throws DictConnectionException {
+                        connection.getMatchList(word, strategy, database);
+                    }
+                };
+            }
+        };
+    }
+
+    /** A client with its own connection, issuing DEFINE commands. */
+    public static ClientFactory defineClients(final String host, final int port, final Database database) {
+        return new ClientFactory() {
+            @Override
+            public Client create() throws DictConnectionException {
+                return new ConnectionClient(host, port) {
+                    @Override
+                    protected void lookup(DictionaryConnection connection, String word)
+                            throws DictConnectionException {
+                        connection.getDefinitions(word, database);
+                    }
+                };
+            }
+        };
+    }
+
+    /** Clients sharing a single pool of connections, issuing DEFINE commands. */
+    public static ClientFactory pooledDefineClients(final DictionaryConnectionPool pool, final Database database) {
+        return new ClientFactory() {
+            @Override
+            public Client create() {
+                return new Client() {
+                    @Override
+                    public void lookup(String word) throws DictConnectionException {
+                        DictionaryConnection connection = pool.acquire();
+                        try {
+                            connection.getDefinitions(word, database);
+                            pool.release(connection);
+                        } catch (DictConnectionException e) {
+                            pool.discard(connection);
+                            throw e;
+                        }
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+        };
+    }
+
+    private static void usage() {
+        System.out.println("Usage: LoadGenerator (--host host[:port] | --standin fixture-file) [options]\n" +
+                "  --trace file          words to look up, one per line (default: fixture headwords)\n" +
+                "  --mode match|define|pooled-define   (default: define)\n" +
+                "  --database name       (default: *)\n" +
+                "  --strategy name       (default: prefix)\n" +
+                "  --concurrency n       (default: 1)\n" +
+                "  --connections n       pool size for pooled-define (default: concurrency)\n" +
+                "  --requests n          total requests (default: one pass over the trace)\n" +
+                "  --duration seconds    run for a fixed time instead\n" +
+                "  --rate n              target requests per second across all workers\n" +
+                "  --latency ms, --jitter ms, --bandwidth bytes/s, --error-rate p, --error-code code,\n" +
+                "  --max-connections n   behaviour of the stand-in server");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException, DictConnectionException {
+        Map<String, String> options = new HashMap<>();
+        ServerBehaviour behaviour = new ServerBehaviour();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length || !args[i].startsWith("--"))
+                usage();
+            if (!StandInDictServer.applyOption(behaviour, args[i], args[i + 1]))
+                options.put(args[i], args[i + 1]);
+        }
+        if (!options.containsKey("--host") && !options.containsKey("--standin"))
+            usage();
+
+        String host;
+        int port = DictionaryConnection.DEFAULT_PORT;
+        List<String> trace = new ArrayList<>();
+        StandInDictServer server = null;
+        if (options.containsKey("--standin")) {
+            FixtureCorpus corpus = FixtureCorpus.load(Paths.get(options.get("--standin")));
+            server = new StandInDictServer(corpus, behaviour);
+            server.start(0);
+            host = "localhost";
+            port = server.getPort();
+            for (Database database : corpus.getDatabases())
+                trace.addAll(corpus.getHeadwords(database.getName()));
+        } else {
+            host = options.get("--host");
+            if (host.contains(":")) {
+                port = Integer.parseInt(host.substring(host.indexOf(':') + 1));
+                host = host.substring(0, host.indexOf(':'));
+            }
+        }
+        if (options.containsKey("--trace")) {
+            trace.clear();
+            for (String line : Files.readAllLines(Paths.get(options.get("--trace")), StandardCharsets.UTF_8))
+                if (!line.trim().isEmpty())
+                    trace.add(line.trim());
+        }
+
+        int concurrency = Integer.parseInt(getOption(options, "--concurrency", "1"));
+        Database database = new Database(getOption(options, "--database", "*"), "");
+        MatchingStrategy strategy = new MatchingStrategy(getOption(options, "--strategy", "prefix"), "");
+        DictionaryConnectionPool pool = null;
+        ClientFactory factory;
+        switch (getOption(options, "--mode", "define")) {
+            case "match":
+                factory = matchClients(host, port, strategy, database);
+                break;
+            case "define":
+                factory = defineClients(host, port, database);
+                break;
+            case "pooled-define":
+                pool = new DictionaryConnectionPool(host, port,
+                        Integer.parseInt(getOption(options, "--connections", String.valueOf(concurrency))));
+                pool.setNegativeCache(new NegativeCache(0, 0));
+                pool.setResponseCache(new ResponseCache(0, 0));
+                factory = pooledDefineClients(pool, database);
+                break;
+            default:
+                usage();
+                return;
+        }
+
+        LoadGenerator generator = new LoadGenerator(trace, factory);
+        generator.setConcurrency(concurrency);
+        generator.setMaxRequests(Long.parseLong(getOption(options, "--requests", "0")));
+        generator.setDurationMillis((long) (Double.parseDouble(getOption(options, "--duration", "0")) * 1000));
+        generator.setRequestsPerSecond(Double.parseDouble(getOption(options, "--rate", "0")));
+        System.out.println(generator.run());
+
+        if (pool != null)
+            pool.close();
+        if (server != null)
+            server.stop();
+    }
+
+    private static String getOption(Map<String, String> options, String name, String defaultValue) {
+        return options.containsKey(name) ? options.get(name) : defaultValue;
+    }
+}
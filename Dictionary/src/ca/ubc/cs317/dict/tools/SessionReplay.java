@@ -0,0 +1,283 @@
+package ca.ubc.cs317.dict.tools;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.NegativeCache;
+import ca.ubc.cs317.dict.net.ResponseCache;
+import ca.ubc.cs317.dict.net.SessionRecorder;
+import ca.ubc.cs317.dict.util.DictStringParser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Replays sessions recorded with SessionRecorder through the client, without a server. For each session, the bytes
+ * the server sent are fed back to a DictionaryConnection, either at the pace they were received or as fast as the
+ * client can parse them, while the commands found in the recording are issued again in the same order. Since the
+ * client reads exactly the same bytes, a recording of a slow exchange becomes a repeatable benchmark of the parser
+ * and the client, and the commands the client sends are checked against the recorded ones.
+ *
+ * The caches are disabled during the replay, so every recorded command is sent again instead of being answered from
+ * a cache.
+ */
+public class SessionReplay {
+
+    /** The outcome of replaying one session. */
+    public static class Result {
+        private final int session;
+        private final int commands;
+        private final long bytes;
+        private final long elapsedNanos;
+        private final boolean matched;
+        private final String failure;
+
+        Result(int session, int commands, long bytes, long elapsedNanos, boolean matched, String failure) {
+            this.session = session;
+            this.commands = commands;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.matched = matched;
+            this.failure = failure;
+        }
+
+        public int getSession() {
+            return session;
+        }
+
+        /** Number of commands the client sent during the replay. */
+        public int getCommands() {
+            return commands;
+        }
+
+        /** Number of bytes of replies fed to the client. */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /** Whether the client sent exactly the recorded commands. */
+        public boolean isMatched() {
+            return matched;
+        }
+
+        /** The reason the replay stopped early, or null if it completed. */
+        public String getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("session %d: %d commands, %d bytes in %.2f ms%s%s", session, commands, bytes,
+                    elapsedNanos / 1e6, matched ? "" : ", commands differ from the recording",
+                    failure == null ? "" : ", stopped: " + failure);
+        }
+    }
+
+    private final Map<Integer, List<SessionRecorder.Chunk>> sessions = new TreeMap<>();
+    private boolean paced = false;
+
+    public SessionReplay(List<SessionRecorder.Chunk> chunks) {
+        for (SessionRecorder.Chunk chunk : chunks) {
+            List<SessionRecorder.Chunk> session = sessions.get(chunk.getSession());
+            if (session == null)
+                sessions.put(chunk.getSession(), session = new ArrayList<>());
+            session.add(chunk);
+        }
+    }
+
+    /** Sets whether replies are fed to the client at the pace they were recorded, rather than as fast as possible. */
+    public void setPaced(boolean paced) {
+        this.paced = paced;
+    }
+
+    public Set<Integer> getSessions() {
+        return sessions.keySet();
+    }
+
+    /** Replays every session, one after the other. */
+    public List<Result> replayAll() {
+        List<Result> results = new ArrayList<>();
+        for (int session : sessions.keySet())
+            results.add(replay(session));
+        return results;
+    }
+
+    /** Replays one session. A session whose beginning was overwritten in the recorder's buffer can't be replayed,
+     * since the client needs the welcome message, and stops with a failure.
+     */
+    public Result replay(int session) {
+        List<SessionRecorder.Chunk> chunks = sessions.get(session);
+        List<String> recordedCommands = new ArrayList<>();
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        List<SessionRecorder.Chunk> received = new ArrayList<>();
+        long bytes = 0;
+        for (SessionRecorder.Chunk chunk : chunks) {
+            if (chunk.getDirection() == SessionRecorder.SENT) {
+                sent.write(chunk.getData(), 0, chunk.getData().length);
+            } else {
+                received.add(chunk);
+                bytes += chunk.getData().length;
+            }
+        }
+        for (String line : new String(sent.toByteArray(), StandardCharsets.UTF_8).split("\r?\n"))
+            if (!line.isEmpty() && !line.equals("QUIT"))
+                recordedCommands.add(line);
+
+        if (!startsWithWelcome(chunks))
+            return new Result(session, 0, bytes, 0, true, "the beginning of the session was overwritten");
+
+        ByteArrayOutputStream replayedOutput = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        String failure = null;
+        DictionaryConnection connection = null;
+        try {
+            long firstOffset = chunks.get(0).getOffsetNanos();
+            connection = new DictionaryConnection(
+                    new ChunkInputStream(received, paced ? firstOffset : -1), replayedOutput);
+            connection.setNegativeCache(new NegativeCache(0, 0));
+            connection.setResponseCache(new ResponseCache(0, 0));
+            for (int i = 0; i < recordedCommands.size(); i++) {
+                // Commands the client sends on its own (e.g., SHOW DB before the first DEFINE) are not issued twice
+                if (i < connection.getCommandsSent())
+                    continue;
+                issue(connection, recordedCommands.get(i));
+            }
+        } catch (DictConnectionException | IllegalArgumentException e) {
+            failure = e.getMessage();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        List<String> replayedCommands = new ArrayList<>();
+        for (String line : new String(replayedOutput.toByteArray(), StandardCharsets.UTF_8).split("\r?\n"))
+            if (!line.isEmpty())
+                replayedCommands.add(line);
+        boolean matched = failure != null ?
+                recordedCommands.subList(0, Math.min(replayedCommands.size(), recordedCommands.size()))
+                        .equals(replayedCommands) :
+                recordedCommands.equals(replayedCommands);
+        int commands = connection == null ? 0 : (int) connection.getCommandsSent();
+        return new Result(session, commands, bytes, elapsed, matched, failure);
+    }
+
+    /** Checks whether a session starts with the server's welcome message (or its refusal to talk). */
+    private static boolean startsWithWelcome(List<SessionRecorder.Chunk> chunks) {
+        SessionRecorder.Chunk first = chunks.get(0);
+        if (first.getDirection() != SessionRecorder.RECEIVED)
+            return false;
+        String start = new String(first.getData(), 0, Math.min(3, first.getData().length), StandardCharsets.US_ASCII);
+        return start.equals("220") || start.startsWith("4");
+    }
+
+    private static void issue(DictionaryConnection connection, String command) throws DictConnectionException {
+        String[] atoms = DictStringParser.splitAtoms(command);
+        String name = atoms.length > 0 ? atoms[0].toUpperCase(Locale.ROOT) : "";
+        if (name.equals("DEFINE") && atoms.length == 3) {
+            connection.getDefinitions(atoms[2], new Database(atoms[1], ""));
+        } else if (name.equals("MATCH") && atoms.length == 4) {
+            connection.getMatchList(atoms[3], new MatchingStrategy(atoms[2], ""), new Database(atoms[1], ""));
+        } else if (name.equals("SHOW") && atoms.length == 2 && atoms[1].equalsIgnoreCase("DB")) {
+            connection.getDatabaseList();
+        } else if (name.equals("SHOW") && atoms.length == 2 && atoms[1].equalsIgnoreCase("STRAT")) {
+            connection.getStrategyList();
+        } else if (name.equals("SHOW") && atoms.length == 3 && atoms[1].equalsIgnoreCase("INFO")) {
+            connection.getDatabaseInfo(new Database(atoms[2], ""));
+        } else {
+            throw new IllegalArgumentException("Command not supported by the replay: " + command);
+        }
+    }
+
+    /** Returns the recorded chunks one at a time, each no earlier than its recorded time if paced. */
+    private static class ChunkInputStream extends InputStream {
+        private final List<SessionRecorder.Chunk> chunks;
+        private final long firstOffsetNanos;
+        private final long startNanos = System.nanoTime();
+        private int index = 0;
+        private int position = 0;
+
+        /**
+         * @param firstOffsetNanos Recorded time of the start of the session, or -1 not to pace the chunks.
+         */
+        ChunkInputStream(List<SessionRecorder.Chunk> chunks, long firstOffsetNanos) {
+            this.chunks = chunks;
+            this.firstOffsetNanos = firstOffsetNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (index >= chunks.size())
+                return -1;
+            SessionRecorder.Chunk chunk = chunks.get(index);
+            if (position == 0 && firstOffsetNanos >= 0)
+                waitUntil(chunk.getOffsetNanos() - firstOffsetNanos);
+            int count = Math.min(len, chunk.getData().length - position);
+            System.arraycopy(chunk.getData(), position, b, off, count);
+            position += count;
+            if (position == chunk.getData().length) {
+                index++;
+                position = 0;
+            }
+            return count;
+        }
+
+        private void waitUntil(long offsetNanos) throws IOException {
+            long delayNanos = startNanos + offsetNanos - System.nanoTime();
+            if (delayNanos <= 0)
+                return;
+            try {
+                Thread.sleep(delayNanos / 1000000, (int) (delayNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while replaying a session");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i + 1 < args.length; i += 2)
+            options.put(args[i], args[i + 1]);
+        if (args.length < 1 || args[0].startsWith("--")) {
+            System.out.println("Usage: SessionReplay recording-file\n" +
+                    "  [--speed recorded|max (default max)] [--iterations n (default 1)] [--session n]");
+            System.exit(1);
+        }
+        SessionReplay replay = new SessionReplay(SessionRecorder.load(Paths.get(args[0])));
+        replay.setPaced("recorded".equals(options.get("--speed")));
+        int iterations = Integer.parseInt(options.containsKey("--iterations") ? options.get("--iterations") : "1");
+
+        boolean allMatched = true;
+        for (int iteration = 1; iteration <= iterations; iteration++) {
+            List<Result> results = options.containsKey("--session") ?
+                    Collections.singletonList(replay.replay(Integer.parseInt(options.get("--session")))) :
+                    replay.replayAll();
+            long commands = 0, bytes = 0, elapsedNanos = 0;
+            for (Result result : results) {
+                if (iterations == 1)
+                    System.out.println(result);
+                commands += result.getCommands();
+                bytes += result.getBytes();
+                elapsedNanos += result.getElapsedNanos();
+                allMatched &= result.isMatched();
+            }
+            System.out.println(String.format("Iteration %d: %d sessions, %d commands, %d bytes in %.2f ms " +
+                            "(%.0f commands/s, %.2f MB/s)", iteration, results.size(), commands, bytes,
+                    elapsedNanos / 1e6, commands / (elapsedNanos / 1e9), bytes / 1e6 / (elapsedNanos / 1e9)));
+        }
+        System.exit(allMatched ? 0 : 2);
+    }
+}
@@ -5,6 +5,7 @@ import ca.ubc.cs317.dict.model.Definition;
 import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -13,6 +14,8 @@ import java.util.List;
 public class DefinitionTableModel extends AbstractTableModel {
 
     private List<Definition> definitionList = new ArrayList<>();
+    // Catalog position of the database each row came from, used to keep incrementally inserted rows in order
+    private List<Integer> catalogIndexList = new ArrayList<>();
 
     /**
      * Returns the number of rows in the model. A
@@ -76,6 +79,27 @@ public class DefinitionTableModel extends AbstractTableModel {
     public void populateDefinitions(Collection<Definition> definitions) {
         definitionList.clear();
         definitionList.addAll(definitions);
+        catalogIndexList.clear();
+        catalogIndexList.addAll(Collections.nCopies(definitions.size(), 0));
         fireTableDataChanged();
     }
+
+    /** Adds the definitions from one database to the table, after every row from databases with a lower or equal
+     * catalog position, and notifies the table only about the rows that were inserted.
+     *
+     * @param catalogIndex Position of the database in the catalog.
+     * @param definitions  Definitions to be added.
+     * @return The index of the first inserted row.
+     */
+    public int insertDefinitions(int catalogIndex, Collection<Definition> definitions) {
+        int row = 0;
+        while (row < catalogIndexList.size() && catalogIndexList.get(row) <= catalogIndex)
+            row++;
+        if (definitions.isEmpty())
+            return row;
+        definitionList.addAll(row, definitions);
+        catalogIndexList.addAll(row, Collections.nCopies(definitions.size(), catalogIndex));
+        fireTableRowsInserted(row, row + definitions.size() - 1);
+        return row;
+    }
 }
@@ -1,28 +1,79 @@
 package ca.ubc.cs317.dict.ui;
 
 import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.exception.DictConnectionLostException;
+import ca.ubc.cs317.dict.exception.DictTimeoutException;
+import ca.ubc.cs317.dict.index.InvertedIndex;
+import ca.ubc.cs317.dict.index.SearchHit;
 import ca.ubc.cs317.dict.model.Database;
 import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
-import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.*;
+import ca.ubc.cs317.dict.store.LocalDictionary;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created by Jonatan on 2017-09-09.
  */
 public class DictionaryMain extends JFrame {
 
+    // Upper bound only: the scheduler's limiter finds how many connections the server actually tolerates
+    private static final int PARALLEL_CONNECTIONS = 8;
+    private static final int WARM_UP_QUERIES = 50;
+    private static final double WARM_UP_QUERIES_PER_SECOND = 2;
+    private static final Path QUERY_LOG_FILE = Paths.get(System.getProperty("user.home"), ".dictionary",
+            "query-log.tsv");
+    private static final Path INDEX_DIRECTORY = Paths.get(System.getProperty("user.home"), ".dictionary", "index");
+    // Databases mirrored with DictionaryMirror into this directory are read locally instead of from the server
+    private static final Path MIRROR_DIRECTORY = Paths.get(System.getProperty("user.home"), ".dictionary", "mirror");
+    private static final int REVERSE_LOOKUP_RESULTS = 100;
+    // When set (e.g., -Ddictionary.recording=session.rec), everything exchanged with the server is recorded into this
+    // file on exit, for replay with SessionReplay
+    private static final String RECORDING_PROPERTY = "dictionary.recording";
+
     private DictionaryConnection connection;
+    private boolean reconnecting = false;
+    /** Whether the connection was established and the catalog loaded, so a failed request can be retried silently. */
+    private boolean connected = false;
+    private String host;
+    private int port;
+    private NegativeCache negativeCache;
+    private ResponseCache responseCache;
+    private ParallelDefinitionFetcher parallelFetcher;
+    private SpellingCorrector spellingCorrector;
+    private DictionaryConnectionPool connectionPool;
+    // Every lookup goes through the scheduler, so searches are served before autocompletion and warm-up
+    private RequestScheduler requestScheduler;
+    private CacheWarmer cacheWarmer;
+    private QueryLog queryLog = new QueryLog();
+    private InvertedIndex definitionIndex;
+    private LocalDictionary localDictionary;
+    // Definitions are indexed one batch at a time, away from the event dispatch thread
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
     private String serverName = "dict.org";
+    private final SessionRecorder sessionRecorder =
+            System.getProperty(RECORDING_PROPERTY) == null ? null : new SessionRecorder();
+    private List<Database> catalog = new ArrayList<>();
 
     private DefaultComboBoxModel<Database> databaseModel;
     private DefaultComboBoxModel<MatchingStrategy> strategyModel;
@@ -30,8 +81,13 @@ public class DictionaryMain extends JFrame {
 
     private JComboBox<Database> databaseSelection;
     private JComboBox<MatchingStrategy> strategySelection;
+    private JCheckBox parallelSelection;
+    private JCheckBox correctionSelection;
+    private JCheckBox speculativeSelection;
+    private JLabel correctionLabel;
     private WordSearchField wordSearchField;
     private JTable definitionTable;
+    private SwingWorker<?, ?> definitionWorker;
 
     DictionaryMain() {
         super("Dictionary");
@@ -39,7 +95,10 @@ public class DictionaryMain extends JFrame {
         this.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                if (connection == null)
+                saveQueryLog();
+                saveRecording();
+                closeDefinitionIndex();
+                if (connection != null)
                     connection.close();
             }
         });
@@ -47,7 +106,7 @@ public class DictionaryMain extends JFrame {
 
         JPanel optionsPanel = new JPanel(new GridBagLayout());
         GridBagConstraints c = new GridBagConstraints();
-        c.fill = c.BOTH;
+        c.fill = GridBagConstraints.BOTH;
         c.weightx = 1;
         this.getContentPane().add(optionsPanel, BorderLayout.SOUTH);
 
@@ -58,20 +117,39 @@ public class DictionaryMain extends JFrame {
         databaseLabel.setHorizontalAlignment(JLabel.TRAILING);
         databaseSelection = new JComboBox<>(databaseModel);
         databaseLabel.setLabelFor(databaseSelection);
-        c.gridwidth = c.RELATIVE;
+        c.gridwidth = GridBagConstraints.RELATIVE;
         optionsPanel.add(databaseLabel, c);
-        c.gridwidth = c.REMAINDER;
+        c.gridwidth = GridBagConstraints.REMAINDER;
         optionsPanel.add(databaseSelection, c);
 
         JLabel strategyLabel = new JLabel("Hint Strategy:");
         strategyLabel.setHorizontalAlignment(JLabel.TRAILING);
         strategySelection = new JComboBox<>(strategyModel);
         strategyLabel.setLabelFor(strategySelection);
-        c.gridwidth = c.RELATIVE;
+        c.gridwidth = GridBagConstraints.RELATIVE;
         optionsPanel.add(strategyLabel, c);
-        c.gridwidth = c.REMAINDER;
+        c.gridwidth = GridBagConstraints.REMAINDER;
         optionsPanel.add(strategySelection, c);
 
+        parallelSelection = new JCheckBox("Query all databases in parallel", true);
+        c.gridwidth = GridBagConstraints.REMAINDER;
+        optionsPanel.add(parallelSelection, c);
+
+        correctionSelection = new JCheckBox("Suggest corrections for words without definitions", true);
+        c.gridwidth = GridBagConstraints.REMAINDER;
+        optionsPanel.add(correctionSelection, c);
+
+        speculativeSelection = new JCheckBox("Look for corrections while defining (faster for typos, more requests)",
+                false);
+        c.gridwidth = GridBagConstraints.REMAINDER;
+        optionsPanel.add(speculativeSelection, c);
+        correctionSelection.addItemListener(new ItemListener() {
+            @Override
+            public void itemStateChanged(ItemEvent e) {
+                speculativeSelection.setEnabled(correctionSelection.isSelected());
+            }
+        });
+
         JButton disconnectButton = new JButton("Disconnect");
         disconnectButton.addActionListener(new ActionListener() {
             @Override
@@ -79,7 +157,7 @@ public class DictionaryMain extends JFrame {
                 establishConnection();
             }
         });
-        c.gridwidth = c.REMAINDER;
+        c.gridwidth = GridBagConstraints.REMAINDER;
         optionsPanel.add(disconnectButton, c);
 
         JPanel searchPanel = new JPanel(new BorderLayout());
@@ -96,7 +174,22 @@ public class DictionaryMain extends JFrame {
             }
         });
         this.getRootPane().setDefaultButton(searchButton);
-        searchPanel.add(searchButton, BorderLayout.LINE_END);
+
+        JButton reverseLookupButton = new JButton("Search Definitions");
+        reverseLookupButton.setToolTipText("Find words whose definitions contain the text (AND, OR and \"phrases\")");
+        reverseLookupButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showReverseLookup();
+            }
+        });
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 2));
+        buttonPanel.add(searchButton);
+        buttonPanel.add(reverseLookupButton);
+        searchPanel.add(buttonPanel, BorderLayout.LINE_END);
+
+        correctionLabel = new JLabel(" ");
+        searchPanel.add(correctionLabel, BorderLayout.PAGE_END);
 
         definitionModel = new DefinitionTableModel();
         definitionTable = new JTable(definitionModel);
@@ -105,52 +198,401 @@ public class DictionaryMain extends JFrame {
         definitionTable.getColumnModel().getColumn(1).setPreferredWidth(30);
         definitionTable.getColumnModel().getColumn(2).setPreferredWidth(500);
         this.getContentPane().add(new JScrollPane(definitionTable), BorderLayout.CENTER);
+
+        try {
+            queryLog.load(QUERY_LOG_FILE);
+        } catch (IOException e) {
+            System.out.println("Could not read the query log: " + e.getMessage());
+        }
+    }
+
+    private void saveQueryLog() {
+        try {
+            queryLog.save(QUERY_LOG_FILE);
+        } catch (IOException e) {
+            System.out.println("Could not save the query log: " + e.getMessage());
+        }
+    }
+
+    private void saveRecording() {
+        if (sessionRecorder == null)
+            return;
+        try {
+            sessionRecorder.save(Paths.get(System.getProperty(RECORDING_PROPERTY)));
+        } catch (IOException e) {
+            System.out.println("Could not save the session recording: " + e.getMessage());
+        }
     }
 
     public void handleException(Throwable ex) {
+        if (connected && (ex instanceof DictTimeoutException || ex instanceof DictConnectionLostException)) {
+            // The request is lost, but its connection is being replaced (by the pool, or by reconnect for the main
+            // connection) and the server may well answer the next one; don't bother the user
+            System.out.println("Request failed: " + ex.getMessage());
+            reconnect();
+            return;
+        }
         JOptionPane.showMessageDialog(this, "Connection error:\n" + ex.toString(), "Connection error", JOptionPane.ERROR_MESSAGE);
         establishConnection();
     }
 
+    /** Replaces a broken connection with a new one to the same server, in the background and without asking the user
+     * anything. Only if the server can't be reached at all is the user asked for a server again.
+     */
+    private void reconnect() {
+        if (reconnecting || connection == null || !connection.isBroken())
+            return; // Pooled connections that failed have already been discarded by the pool
+        reconnecting = true;
+        new SwingWorker<DictionaryConnection, Void>() {
+            @Override
+            protected DictionaryConnection doInBackground() throws Exception {
+                return openConnection();
+            }
+
+            @Override
+            protected void done() {
+                reconnecting = false;
+                try {
+                    connection = get();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(DictionaryMain.this, "Connection error:\n" + e.getCause().toString(),
+                            "Connection error", JOptionPane.ERROR_MESSAGE);
+                    establishConnection();
+                }
+            }
+        }.execute();
+    }
+
+    private DictionaryConnection openConnection() throws DictConnectionException {
+        DictionaryConnection connection = new DictionaryConnection(host, port,
+                DictionaryConnection.DEFAULT_CONNECT_TIMEOUT_MILLIS, DictionaryConnection.DEFAULT_READ_TIMEOUT_MILLIS,
+                sessionRecorder);
+        connection.setNegativeCache(negativeCache);
+        connection.setResponseCache(responseCache);
+        connection.setLocalDictionary(localDictionary);
+        return connection;
+    }
+
     public void showDefinitions() {
+        if (definitionWorker != null)
+            definitionWorker.cancel(true);
+
+        Database database = (Database) databaseModel.getSelectedItem();
+        queryLog.recordDefine(database.getName(), wordSearchField.getSelectedItem().toString());
+        correctionLabel.setText(" ");
+        if (parallelFetcher != null && parallelSelection.isSelected() && database.getName().equals("*")) {
+            showDefinitionsIncrementally();
+            return;
+        }
+        if (isCorrecting()) {
+            showCorrectedDefinitions(database, false);
+            return;
+        }
+
+        definitionWorker = new SwingWorker<Collection<Definition>, Void>() {
+            private String word = wordSearchField.getSelectedItem().toString();
+            private Database database = (Database) databaseModel.getSelectedItem();
+
+            @Override
+            protected Collection<Definition> doInBackground() throws Exception {
+                return requestScheduler.execute(RequestScheduler.Priority.INTERACTIVE,
+                        new RequestScheduler.Request<Collection<Definition>>() {
+                            @Override
+                            public Collection<Definition> execute(DictionaryConnection connection)
+                                    throws DictConnectionException {
+                                return connection.getDefinitions(word, database);
+                            }
+                        });
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                try {
+                    Collection<Definition> definitions = get();
+                    definitionModel.populateDefinitions(definitions);
+                    adjustRowHeights(0, definitionModel.getRowCount());
+                    indexDefinitions(definitions);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } catch (ExecutionException e) {
+                    handleException(e.getCause());
+                }
+            }
+        };
+        definitionWorker.execute();
+
+    }
+
+    private boolean isCorrecting() {
+        return spellingCorrector != null && spellingCorrector.isAvailable() && correctionSelection.isSelected();
+    }
+
+    /** Retrieves definitions and, if the word has none, shows the definitions of the most likely correction along
+     * with other suggestions. With speculative corrections selected, corrections are looked for while the word itself
+     * is being defined, so a misspelled word costs hardly more than a correctly spelled one.
+     *
+     * @param knownMiss Whether the word is already known to have no definitions, in which case only the corrections
+     *                  are looked for.
+     */
+    private void showCorrectedDefinitions(final Database database, final boolean knownMiss) {
+        spellingCorrector.setSpeculative(speculativeSelection.isSelected());
+        definitionWorker = new SwingWorker<SpellingCorrector.Result, Void>() {
+            private String word = wordSearchField.getSelectedItem().toString();
+
+            @Override
+            protected SpellingCorrector.Result doInBackground() throws Exception {
+                return knownMiss ? spellingCorrector.suggest(word, database) : spellingCorrector.lookup(word, database);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                try {
+                    SpellingCorrector.Result result = get();
+                    definitionModel.populateDefinitions(result.getDefinitions());
+                    adjustRowHeights(0, definitionModel.getRowCount());
+                    indexDefinitions(result.getDefinitions());
+                    showCorrections(result);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } catch (ExecutionException e) {
+                    handleException(e.getCause());
+                }
+            }
+        };
+        definitionWorker.execute();
+    }
+
+    private void showCorrections(SpellingCorrector.Result result) {
+        List<String> candidates = result.getCandidates();
+        if (candidates.isEmpty()) {
+            correctionLabel.setText(" ");
+            return;
+        }
+        StringBuilder text = new StringBuilder("No definitions for '").append(result.getWord())
+                .append("'. Showing '").append(result.getCorrection()).append("'.");
+        if (candidates.size() > 1) {
+            text.append(" Did you mean: ");
+            for (int i = 1; i < candidates.size(); i++)
+                text.append(i > 1 ? ", " : "").append(candidates.get(i));
+        }
+        correctionLabel.setText(text.toString());
+    }
 
-        new SwingWorker<Void, Void>() {
+    /** Retrieves definitions from all databases with one concurrent request per database, adding each database's
+     * definitions to the table as soon as they arrive, in catalog order.
+     */
+    private void showDefinitionsIncrementally() {
+        definitionModel.populateDefinitions(Collections.<Definition>emptyList());
+
+        definitionWorker = new SwingWorker<Void, DatabaseDefinitions>() {
             private String word = wordSearchField.getSelectedItem().toString();
+            private List<Database> databases = new ArrayList<>(catalog);
+            private List<String> failedDatabases = new ArrayList<>();
 
             @Override
             protected Void doInBackground() throws Exception {
-                definitionModel.populateDefinitions(connection.getDefinitions(word,
-                        (Database) databaseModel.getSelectedItem()));
+                parallelFetcher.fetch(word, databases, new ParallelDefinitionFetcher.Listener() {
+                    @Override
+                    public void definitionsReceived(int catalogIndex, Database database,
+                                                    Collection<Definition> definitions) {
+                        publish(new DatabaseDefinitions(catalogIndex, definitions));
+                    }
+
+                    @Override
+                    public void databaseFailed(int catalogIndex, Database database, DictConnectionException cause) {
+                        System.out.println("Could not retrieve definitions from " + database.getName() + ": "
+                                + cause.getMessage());
+                        failedDatabases.add(database.getName());
+                    }
+                });
                 return null;
             }
 
+            @Override
+            protected void process(List<DatabaseDefinitions> chunks) {
+                if (isCancelled()) return;
+                for (DatabaseDefinitions chunk : chunks) {
+                    int row = definitionModel.insertDefinitions(chunk.catalogIndex, chunk.definitions);
+                    adjustRowHeights(row, row + chunk.definitions.size());
+                    indexDefinitions(chunk.definitions);
+                }
+            }
+
             @Override
             protected void done() {
+                if (isCancelled()) return;
                 try {
                     get(); // Just to trigger a possible exception caused by doInBackground
-                    for (int i = 0; i<definitionModel.getRowCount() ; i++) {
-                        Component c = definitionTable.prepareRenderer(definitionTable.getCellRenderer(i, 2), i, 2);
-                        definitionTable.setRowHeight(i, Math.max((int) c.getPreferredSize().getHeight(), definitionTable.getRowHeight()));
+                    if (!failedDatabases.isEmpty()) {
+                        // The table is incomplete; say so rather than suggest corrections for a word that may exist
+                        correctionLabel.setText("Definitions may be missing: no reply from "
+                                + String.join(", ", failedDatabases) + ".");
+                        return;
                     }
+                    // No database defines the word, so only the corrections are left to look for
+                    if (definitionModel.getRowCount() == 0 && isCorrecting())
+                        showCorrectedDefinitions((Database) databaseModel.getSelectedItem(), true);
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 } catch (ExecutionException e) {
                     handleException(e.getCause());
                 }
             }
-        }.execute();
+        };
+        definitionWorker.execute();
+    }
+
+    /** Shows the indexed definitions that contain the text in the search field, best matches first. Only definitions
+     * retrieved earlier (in this or previous sessions) can be found.
+     */
+    private void showReverseLookup() {
+        if (definitionWorker != null)
+            definitionWorker.cancel(true);
+        if (definitionIndex == null)
+            return;
 
+        definitionWorker = new SwingWorker<List<Definition>, Void>() {
+            private String query = wordSearchField.getSelectedItem().toString();
+            private Database database = (Database) databaseModel.getSelectedItem();
+
+            @Override
+            protected List<Definition> doInBackground() throws Exception {
+                List<String> databaseNames = database.getName().equals("*") || database.getName().equals("!") ?
+                        null : Collections.singletonList(database.getName());
+                List<Definition> definitions = new ArrayList<>();
+                for (SearchHit hit : definitionIndex.search(query, databaseNames, REVERSE_LOOKUP_RESULTS))
+                    definitions.add(definitionIndex.getDefinition(hit));
+                return definitions;
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                try {
+                    definitionModel.populateDefinitions(get());
+                    adjustRowHeights(0, definitionModel.getRowCount());
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(DictionaryMain.this, e.getCause().getMessage(),
+                            "Search definitions", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        };
+        definitionWorker.execute();
+    }
+
+    private void indexDefinitions(final Collection<Definition> definitions) {
+        final InvertedIndex index = definitionIndex;
+        if (index == null || definitions.isEmpty())
+            return;
+        indexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    index.addAll(definitions);
+                } catch (IOException e) {
+                    System.out.println("Could not index definitions: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /** Closes the definition index once the definitions already queued have been added, and waits until it is closed,
+     * since both callers may exit the application right afterwards.
+     */
+    private void closeDefinitionIndex() {
+        final InvertedIndex index = definitionIndex;
+        definitionIndex = null;
+        if (index == null)
+            return;
+        Future<?> closed = indexExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    System.out.println("Could not close the definition index: " + e.getMessage());
+                }
+            }
+        });
+        try {
+            closed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Could not close the definition index: " + e.getCause());
+        }
+    }
+
+    private void openLocalDictionary(Path directory) {
+        if (localDictionary != null) {
+            try {
+                localDictionary.close();
+            } catch (IOException e) {
+                System.out.println("Could not close the local databases: " + e.getMessage());
+            }
+            localDictionary = null;
+        }
+        if (!Files.isDirectory(directory))
+            return;
+        try {
+            localDictionary = LocalDictionary.open(directory);
+            System.out.println("Local databases: " + localDictionary.getDatabaseNames());
+        } catch (IOException e) {
+            System.out.println("Could not open the local databases: " + e.getMessage());
+        }
+    }
+
+    private void adjustRowHeights(int fromRow, int toRow) {
+        for (int i = fromRow; i < toRow; i++) {
+            Component c = definitionTable.prepareRenderer(definitionTable.getCellRenderer(i, 2), i, 2);
+            definitionTable.setRowHeight(i, Math.max((int) c.getPreferredSize().getHeight(), definitionTable.getRowHeight()));
+        }
+    }
+
+    private static class DatabaseDefinitions {
+        private final int catalogIndex;
+        private final Collection<Definition> definitions;
+
+        DatabaseDefinitions(int catalogIndex, Collection<Definition> definitions) {
+            this.catalogIndex = catalogIndex;
+            this.definitions = definitions;
+        }
     }
 
     public void establishConnection() {
-        if (connection != null)
-            connection.close();
+        if (cacheWarmer != null) {
+            cacheWarmer.stop();
+            cacheWarmer = null;
+        }
+        if (parallelFetcher != null) {
+            parallelFetcher.shutdown();
+            parallelFetcher = null;
+        }
+        if (spellingCorrector != null) {
+            spellingCorrector.shutdown();
+            spellingCorrector = null;
+        }
+        saveQueryLog();
+        closeDefinitionIndex();
+        connected = false;
+        if (connection != null) {
+            // Not close, which exits the application; the user is about to pick a server
+            connection.disconnect();
+            connection = null;
+        }
 
         definitionModel.populateDefinitions(Collections.<Definition>emptyList());
         databaseModel.removeAllElements();
         databaseModel.addElement(new Database("*", "All databases"));
         databaseModel.addElement(new Database("!", "Any database"));
         strategyModel.removeAllElements();
+        catalog.clear();
         wordSearchField.reset();
 
         try {
@@ -158,21 +600,49 @@ public class DictionaryMain extends JFrame {
                     serverName);
             if (serverName == null) System.exit(0);
 
+            host = serverName;
+            port = DictionaryConnection.DEFAULT_PORT;
             if (serverName.contains(":")) {
                 String[] serverData = serverName.split(":", 2);
-                connection = new DictionaryConnection(serverData[0], Integer.parseInt(serverData[1]));
-            } else
-                connection = new DictionaryConnection(serverName);
+                host = serverData[0];
+                port = Integer.parseInt(serverData[1]);
+            }
+            String serverDirectory = host.replaceAll("[^A-Za-z0-9.-]", "_") + "_" + port;
+            openLocalDictionary(MIRROR_DIRECTORY.resolve(serverDirectory));
+            negativeCache = new NegativeCache();
+            responseCache = new ResponseCache();
+            connection = openConnection();
+            connectionPool = new DictionaryConnectionPool(host, port, PARALLEL_CONNECTIONS);
+            connectionPool.setNegativeCache(negativeCache);
+            connectionPool.setResponseCache(responseCache);
+            connectionPool.setLocalDictionary(localDictionary);
+            connectionPool.setSessionRecorder(sessionRecorder);
+            requestScheduler = new RequestScheduler(connectionPool);
+            parallelFetcher = new ParallelDefinitionFetcher(requestScheduler);
+            try {
+                definitionIndex = InvertedIndex.open(INDEX_DIRECTORY.resolve(serverDirectory));
+            } catch (IOException e) {
+                System.out.println("Could not open the definition index: " + e.getMessage());
+            }
 
             for (Database db : connection.getDatabaseList()) {
                 databaseModel.addElement(db);
+                catalog.add(db);
             }
 
-            for (MatchingStrategy strategy : connection.getStrategyList()) {
+            Collection<MatchingStrategy> strategies = connection.getStrategyList();
+            for (MatchingStrategy strategy : strategies) {
                 strategyModel.addElement(strategy);
                 if (strategy.getName().equals("prefix"))
                     strategyModel.setSelectedItem(strategy);
             }
+            spellingCorrector = new SpellingCorrector(requestScheduler, strategies);
+
+            // The catalog is loaded; fill the shared caches with the most popular queries in the background
+            cacheWarmer = new CacheWarmer(requestScheduler, queryLog.topQueries(WARM_UP_QUERIES),
+                    WARM_UP_QUERIES_PER_SECOND);
+            cacheWarmer.start();
+            connected = true;
         } catch (DictConnectionException ex) {
             handleException(ex);
         }
@@ -180,10 +650,19 @@ public class DictionaryMain extends JFrame {
         wordSearchField.grabFocus();
     }
 
-    public Collection<String> getMatchList(String word) throws DictConnectionException {
-        return connection.getMatchList(word,
-                (MatchingStrategy) strategyModel.getSelectedItem(),
-                (Database) databaseModel.getSelectedItem());
+    public Collection<String> getMatchList(final String word) throws DictConnectionException {
+        final MatchingStrategy strategy = (MatchingStrategy) strategyModel.getSelectedItem();
+        final Database database = (Database) databaseModel.getSelectedItem();
+        if (strategy != null)
+            queryLog.recordMatch(strategy.getName(), database.getName(), word);
+        return requestScheduler.execute(RequestScheduler.Priority.AUTOCOMPLETE,
+                new RequestScheduler.Request<Collection<String>>() {
+                    @Override
+                    public Collection<String> execute(DictionaryConnection connection)
+                            throws DictConnectionException {
+                        return connection.getMatchList(word, strategy, database);
+                    }
+                });
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,81 @@
+package ca.ubc.cs317.dict.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A set of strings in a fixed amount of memory, which may wrongly claim to contain a string it was never given (a
+ * false positive), but never forgets one it was given. The filter is sized for an expected number of strings and a
+ * false positive rate; going over the expected number raises the false positive rate, not the memory used.
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions Number of strings the filter is sized for.
+     * @param falsePositiveRate  Probability that a string never added is reported as present, once the expected
+     *                           number of strings has been added.
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("Invalid Bloom filter size");
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate)
+                / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64)];
+        this.bitCount = bits.length * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    /** Adds a string to the filter.
+     *
+     * @return true if the string was certainly not in the filter yet, false if it may have been.
+     */
+    public boolean add(String value) {
+        boolean added = false;
+        long hash = hash(value);
+        // Double hashing: the k bit positions are h1 + i * h2, which is as good as k independent hashes
+        long h1 = hash, h2 = (hash >>> 32) | (hash << 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /** Checks whether a string may have been added: false means it certainly was not. */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long h1 = hash, h2 = (hash >>> 32) | (hash << 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /** Returns the memory used by the filter's bits, in bytes. */
+    public long getSizeInBytes() {
+        return bits.length * 8L;
+    }
+
+    /** 64-bit FNV-1a over the UTF-8 bytes, with a final mix so the high and low halves are both well distributed. */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,47 @@
+package ca.ubc.cs317.dict.util;
+
+/**
+ * A token bucket: permits accumulate at a fixed rate up to a maximum burst, and callers block until enough permits
+ * are available. Used to keep bulk jobs below the command rate a server tolerates.
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final double maxBurst;
+    private double available;
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond Sustained rate at which permits are granted.
+     * @param maxBurst         Maximum number of permits that can be granted at once after a quiet period.
+     */
+    public RateLimiter(double permitsPerSecond, double maxBurst) {
+        if (permitsPerSecond <= 0)
+            throw new IllegalArgumentException("The rate must be positive");
+        this.permitsPerSecond = permitsPerSecond;
+        this.maxBurst = Math.max(1, maxBurst);
+        this.available = this.maxBurst;
+    }
+
+    /** Blocks until the given number of permits is available, and takes them. Requests larger than the burst size
+     * are granted once the bucket is full, and leave it in debt so the average rate is still respected.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public synchronized void acquire(int permits) throws InterruptedException {
+        refill();
+        double needed = Math.min(permits, maxBurst);
+        while (available < needed) {
+            long waitNanos = (long) ((needed - available) / permitsPerSecond * 1e9);
+            wait(Math.max(1, waitNanos / 1000000), (int) (waitNanos % 1000000));
+            refill();
+        }
+        available -= permits;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(maxBurst, available + (now - lastRefillNanos) / 1e9 * permitsPerSecond);
+        lastRefillNanos = now;
+    }
+}
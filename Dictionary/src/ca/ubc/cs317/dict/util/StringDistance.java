@@ -0,0 +1,81 @@
+package ca.ubc.cs317.dict.util;
+
+/**
+ * String similarity measures used to emulate and rank the server-side "lev" and "soundex" matching strategies.
+ */
+public class StringDistance {
+
+    /** Computes the Levenshtein edit distance between two strings, i.e., the minimum number of single character
+     * insertions, deletions and substitutions needed to turn one string into the other.
+     *
+     * @param a First string.
+     * @param b Second string.
+     * @return The edit distance between a and b.
+     */
+    public static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /** Computes the American Soundex code of a word (a letter followed by three digits), as used by the "soundex"
+     * matching strategy.
+     *
+     * @param word Word to be encoded.
+     * @return The Soundex code of the word, or an empty string if the word has no letters.
+     */
+    public static String soundex(String word) {
+        StringBuilder code = new StringBuilder();
+        char lastDigit = 0;
+        for (int i = 0; i < word.length() && code.length() < 4; i++) {
+            char c = Character.toUpperCase(word.charAt(i));
+            if (c < 'A' || c > 'Z')
+                continue;
+            char digit = soundexDigit(c);
+            if (code.length() == 0) {
+                code.append(c);
+            } else if (digit != '0' && digit != lastDigit) {
+                code.append(digit);
+            }
+            // H and W do not separate letters with the same code, vowels do
+            if (c != 'H' && c != 'W')
+                lastDigit = digit;
+        }
+        if (code.length() == 0)
+            return "";
+        while (code.length() < 4)
+            code.append('0');
+        return code.toString();
+    }
+
+    private static char soundexDigit(char c) {
+        switch (c) {
+            case 'B': case 'F': case 'P': case 'V':
+                return '1';
+            case 'C': case 'G': case 'J': case 'K': case 'Q': case 'S': case 'X': case 'Z':
+                return '2';
+            case 'D': case 'T':
+                return '3';
+            case 'L':
+                return '4';
+            case 'M': case 'N':
+                return '5';
+            case 'R':
+                return '6';
+            default:
+                return '0';
+        }
+    }
+}